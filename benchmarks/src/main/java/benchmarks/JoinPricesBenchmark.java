@@ -0,0 +1,104 @@
+package benchmarks;
+
+import domain.Price;
+import domain.PricePeriod;
+import org.openjdk.jmh.annotations.*;
+import services.PriceService;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Joins a batch of new prices, one tenth of the existed count, with existed prices.
+ * <p>
+ * Joins changing existed prices in place get fresh copies of existed prices before every invocation.
+ * A single price join takes microseconds, so {@link #joinPrice} joins a number of new prices one by one
+ * in every invocation, otherwise the copy and the invocation timestamps would outweigh the join.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JoinPricesBenchmark {
+    static final int JOINS_PER_INVOCATION = 100;
+
+    @State(Scope.Benchmark)
+    public static class Dataset {
+        @Param({"1000", "10000"})
+        public int existedCount;
+
+        @Param({"10", "1000"})
+        public int keys;
+
+        @Param({"FORWARD_OFFSET", "BACKWARD_OFFSET", "OCCURRENCE", "ABSORPTION", "MATCH", "MIXED"})
+        public String overlap;
+
+        PriceService priceService;
+        List<Price> existedPrices;
+        List<Price> newPrices;
+        List<PricePeriod> existedPricePeriods;
+        List<PricePeriod> newPricePeriods;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            PriceDataset dataset = new PriceDataset(existedCount, existedCount / 10, keys, overlap);
+            priceService = new PriceService();
+            existedPrices = dataset.getExistedPrices();
+            newPrices = dataset.getNewPrices();
+            existedPricePeriods = toPricePeriods(existedPrices);
+            newPricePeriods = toPricePeriods(newPrices);
+        }
+
+        private List<PricePeriod> toPricePeriods(List<Price> prices) {
+            List<PricePeriod> result = new ArrayList<>(prices.size());
+            for (Price price : prices) {
+                result.add(priceService.toPricePeriod(price));
+            }
+            return result;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ExistedPricesCopy {
+        List<Price> existedPrices;
+
+        @Setup(Level.Invocation)
+        public void setUp(Dataset dataset) {
+            existedPrices = PriceDataset.copyPrices(dataset.existedPrices);
+        }
+    }
+
+    @Benchmark
+    public Collection<Price> joinPrices(Dataset dataset, ExistedPricesCopy copy) {
+        return dataset.priceService.joinPrices(copy.existedPrices, dataset.newPrices);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(JOINS_PER_INVOCATION)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Collection<Price> joinPrice(Dataset dataset, ExistedPricesCopy copy) {
+        Collection<Price> result = copy.existedPrices;
+        for (int i = 0; i < JOINS_PER_INVOCATION; i++) {
+            result = dataset.priceService.joinPrice(result, dataset.newPrices.get(i));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public Collection<Price> joinPricesByKey(Dataset dataset, ExistedPricesCopy copy) {
+        return dataset.priceService.joinPricesByKey(copy.existedPrices, dataset.newPrices);
+    }
+
+    @Benchmark
+    public Collection<Price> mergePrices(Dataset dataset) {
+        return dataset.priceService.mergePrices(dataset.existedPrices, dataset.newPrices);
+    }
+
+    @Benchmark
+    public Collection<PricePeriod> mergePricePeriods(Dataset dataset) {
+        return dataset.priceService.mergePricePeriods(dataset.existedPricePeriods, dataset.newPricePeriods);
+    }
+}
@@ -0,0 +1,95 @@
+package benchmarks;
+
+import domain.Price;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates existed prices as consecutive periods of every key and new prices related to
+ * random existed periods the way given by the overlap name.
+ * <p>
+ * Overlap names are the names of PriceService.TimePeriodRelation, MIXED picks one of them
+ * for every new price.
+ */
+class PriceDataset {
+    static final String[] OVERLAPS = {"FORWARD_OFFSET", "BACKWARD_OFFSET", "OCCURRENCE", "ABSORPTION", "MATCH"};
+
+    private static final long BEGIN = 1356998400000L;
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final long PERIOD = 10 * DAY;
+
+    private final List<Price> existedPrices = new ArrayList<>();
+    private final List<Price> newPrices = new ArrayList<>();
+
+    PriceDataset(int existedCount, int newCount, int keys, String overlap) {
+        Random random = new Random(42);
+        int periodsPerKey = Math.max(existedCount / keys, 1);
+
+        for (int i = 0; i < existedCount; i++) {
+            int key = i / periodsPerKey;
+            long begin = BEGIN + (i % periodsPerKey) * PERIOD;
+            existedPrices.add(createPrice(key, begin, begin + PERIOD, random.nextInt(1000)));
+        }
+
+        for (int i = 0; i < newCount; i++) {
+            Price existedPrice = existedPrices.get(random.nextInt(existedPrices.size()));
+            String priceOverlap = "MIXED".equals(overlap) ? OVERLAPS[random.nextInt(OVERLAPS.length)] : overlap;
+            newPrices.add(createRelatedPrice(existedPrice, priceOverlap));
+        }
+    }
+
+    static Price createRelatedPrice(Price existedPrice, String overlap) {
+        long begin = existedPrice.getBegin().getTime();
+        long end = existedPrice.getEnd().getTime();
+        switch (overlap) {
+            case "FORWARD_OFFSET":
+                begin += PERIOD / 2;
+                end += PERIOD / 2;
+                break;
+            case "BACKWARD_OFFSET":
+                begin -= PERIOD / 2;
+                end -= PERIOD / 2;
+                break;
+            case "OCCURRENCE":
+                begin += 2 * DAY;
+                end -= 2 * DAY;
+                break;
+            case "ABSORPTION":
+                begin -= DAY;
+                end += DAY;
+                break;
+            case "MATCH":
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown overlap " + overlap);
+        }
+        return new Price(existedPrice.getProductCode(), existedPrice.getNumber(), existedPrice.getDepart(),
+                new Date(begin), new Date(end), existedPrice.getValue() + 1);
+    }
+
+    static List<Price> copyPrices(List<Price> prices) {
+        List<Price> result = new ArrayList<>(prices.size());
+        for (Price price : prices) {
+            Price copy = new Price(price.getProductCode(), price.getNumber(), price.getDepart(),
+                    new Date(price.getBegin().getTime()), new Date(price.getEnd().getTime()), price.getValue());
+            copy.setId(price.getId());
+            result.add(copy);
+        }
+        return result;
+    }
+
+    List<Price> getExistedPrices() {
+        return existedPrices;
+    }
+
+    List<Price> getNewPrices() {
+        return newPrices;
+    }
+
+    private static Price createPrice(int key, long begin, long end, long value) {
+        return new Price(String.valueOf(key / 4), key % 4, 1, new Date(begin), new Date(end), value);
+    }
+}
@@ -0,0 +1,48 @@
+package benchmarks;
+
+import domain.Price;
+import org.openjdk.jmh.annotations.*;
+import services.PriceService;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Difference of a single existed price and a new price for every period relation.
+ * <p>
+ * getPricesPeriodDifference changes the existed price, so it is copied in every invocation
+ * and the copy is measured as well.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PricesPeriodDifferenceBenchmark {
+
+    @Param({"FORWARD_OFFSET", "BACKWARD_OFFSET", "OCCURRENCE", "ABSORPTION", "MATCH"})
+    public String overlap;
+
+    private PriceService priceService;
+    private Price existedPrice;
+    private Price newPrice;
+
+    @Setup
+    public void setUp() {
+        priceService = new PriceService();
+        existedPrice = new Price("122856", 1, 1, new Date(1357776000000L), new Date(1358640000000L), 11000);
+        newPrice = PriceDataset.createRelatedPrice(existedPrice, overlap);
+    }
+
+    @Benchmark
+    public List<Price> getPricesPeriodDifference() {
+        return priceService.getPricesPeriodDifference(priceService.copyPrice(existedPrice), newPrice);
+    }
+
+    @Benchmark
+    public Price copyPrice() {
+        return priceService.copyPrice(existedPrice);
+    }
+}
@@ -0,0 +1,59 @@
+package domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Changes of existed prices made by a join, so only changed rows have to be written.
+ * <p>
+ * Updated and split prices keep the id of the existed price they replace. Split prices hold
+ * the earliest piece of the existed price, the other pieces are inserted as new prices.
+ */
+public class PriceChangeSet {
+    private final List<Price> updated = new ArrayList<>();
+    private final List<Price> split = new ArrayList<>();
+    private final List<Price> deleted = new ArrayList<>();
+    private final List<Price> inserted = new ArrayList<>();
+
+    /**
+     * Existed prices which period was trimmed or extended.
+     */
+    public List<Price> getUpdated() {
+        return updated;
+    }
+
+    /**
+     * Existed prices which period was split, holds the earliest piece.
+     */
+    public List<Price> getSplit() {
+        return split;
+    }
+
+    /**
+     * Existed prices absorbed by new ones.
+     */
+    public List<Price> getDeleted() {
+        return deleted;
+    }
+
+    /**
+     * New prices and later pieces of split prices.
+     */
+    public List<Price> getInserted() {
+        return inserted;
+    }
+
+    public boolean isEmpty() {
+        return updated.isEmpty() && split.isEmpty() && deleted.isEmpty() && inserted.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "PriceChangeSet{" +
+                "updated=" + updated +
+                ", split=" + split +
+                ", deleted=" + deleted +
+                ", inserted=" + inserted +
+                '}';
+    }
+}
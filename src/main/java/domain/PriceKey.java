@@ -0,0 +1,66 @@
+package domain;
+
+/**
+ * Key of prices which periods are joined: product code, number and depart.
+ * <p>
+ * Product code is kept as id of {@link ProductCodeDictionary}, so comparing and hashing
+ * keys never touches strings.
+ */
+public class PriceKey {
+    private final int productCodeId;
+    private final int number;
+    private final int depart;
+
+    public PriceKey(int productCodeId, int number, int depart) {
+        this.productCodeId = productCodeId;
+        this.number = number;
+        this.depart = depart;
+    }
+
+    public static PriceKey of(Price price, ProductCodeDictionary dictionary) {
+        return new PriceKey(dictionary.getId(price.getProductCode()), price.getNumber(), price.getDepart());
+    }
+
+    public static PriceKey of(PricePeriod price) {
+        return new PriceKey(price.getProductCodeId(), price.getNumber(), price.getDepart());
+    }
+
+    public int getProductCodeId() {
+        return productCodeId;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public int getDepart() {
+        return depart;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PriceKey priceKey = (PriceKey) o;
+        return productCodeId == priceKey.productCodeId &&
+                number == priceKey.number &&
+                depart == priceKey.depart;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = productCodeId;
+        result = 31 * result + number;
+        result = 31 * result + depart;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "PriceKey{" +
+                "productCodeId=" + productCodeId +
+                ", number=" + number +
+                ", depart=" + depart +
+                '}';
+    }
+}
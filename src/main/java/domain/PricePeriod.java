@@ -0,0 +1,107 @@
+package domain;
+
+import java.util.Date;
+
+/**
+ * Immutable variant of {@link Price} keeping period bounds as epoch milliseconds
+ * and product code as id of {@link ProductCodeDictionary}.
+ */
+public final class PricePeriod {
+    private final long id;
+    private final int productCodeId;
+    private final int number;
+    private final int depart;
+    private final long begin;
+    private final long end;
+    private final long value;
+
+    public PricePeriod(long id, int productCodeId, int number, int depart, long begin, long end, long value) {
+        this.id = id;
+        this.productCodeId = productCodeId;
+        this.number = number;
+        this.depart = depart;
+        this.begin = begin;
+        this.end = end;
+        this.value = value;
+    }
+
+    public static PricePeriod of(Price price, ProductCodeDictionary dictionary) {
+        return new PricePeriod(price.getId(), dictionary.getId(price.getProductCode()), price.getNumber(), price.getDepart(),
+                price.getBegin().getTime(), price.getEnd().getTime(), price.getValue());
+    }
+
+    public Price toPrice(ProductCodeDictionary dictionary) {
+        Price price = new Price(dictionary.getCode(productCodeId), number, depart, new Date(begin), new Date(end), value);
+        price.setId(id);
+        return price;
+    }
+
+    public PricePeriod withPeriod(long id, long begin, long end) {
+        return new PricePeriod(id, productCodeId, number, depart, begin, end, value);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getProductCodeId() {
+        return productCodeId;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public int getDepart() {
+        return depart;
+    }
+
+    public long getBegin() {
+        return begin;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public long getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PricePeriod that = (PricePeriod) o;
+        return productCodeId == that.productCodeId &&
+                number == that.number &&
+                depart == that.depart &&
+                begin == that.begin &&
+                end == that.end &&
+                value == that.value;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = productCodeId;
+        result = 31 * result + number;
+        result = 31 * result + depart;
+        result = 31 * result + Long.hashCode(begin);
+        result = 31 * result + Long.hashCode(end);
+        result = 31 * result + Long.hashCode(value);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "PricePeriod{" +
+                "id=" + id +
+                ", productCodeId=" + productCodeId +
+                ", number=" + number +
+                ", depart=" + depart +
+                ", begin=" + begin +
+                ", end=" + end +
+                ", value=" + value +
+                '}';
+    }
+}
@@ -0,0 +1,135 @@
+package domain;
+
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Prices stored by columns in primitive arrays, product codes are kept as ids of the dictionary.
+ * <p>
+ * Rows are appended only, a row is addressed by its position.
+ */
+public class PriceTable {
+    private final ProductCodeDictionary dictionary;
+    private long[] ids;
+    private int[] productCodeIds;
+    private int[] numbers;
+    private int[] departs;
+    private long[] begins;
+    private long[] ends;
+    private long[] values;
+    private int size;
+
+    public PriceTable(ProductCodeDictionary dictionary) {
+        this(dictionary, 16);
+    }
+
+    public PriceTable(ProductCodeDictionary dictionary, int capacity) {
+        this.dictionary = dictionary;
+        capacity = Math.max(capacity, 1);
+        ids = new long[capacity];
+        productCodeIds = new int[capacity];
+        numbers = new int[capacity];
+        departs = new int[capacity];
+        begins = new long[capacity];
+        ends = new long[capacity];
+        values = new long[capacity];
+    }
+
+    public int add(long id, int productCodeId, int number, int depart, long begin, long end, long value) {
+        if (size == ids.length) {
+            grow();
+        }
+        ids[size] = id;
+        productCodeIds[size] = productCodeId;
+        numbers[size] = number;
+        departs[size] = depart;
+        begins[size] = begin;
+        ends[size] = end;
+        values[size] = value;
+        return size++;
+    }
+
+    public int add(Price price) {
+        return add(price.getId(), dictionary.getId(price.getProductCode()), price.getNumber(), price.getDepart(),
+                price.getBegin().getTime(), price.getEnd().getTime(), price.getValue());
+    }
+
+    public int add(PricePeriod price) {
+        return add(price.getId(), price.getProductCodeId(), price.getNumber(), price.getDepart(),
+                price.getBegin(), price.getEnd(), price.getValue());
+    }
+
+    /**
+     * Copies the row of the other table, both tables have to share the dictionary.
+     */
+    public int add(PriceTable table, int row) {
+        return add(table.ids[row], table.productCodeIds[row], table.numbers[row], table.departs[row],
+                table.begins[row], table.ends[row], table.values[row]);
+    }
+
+    public Price getPrice(int row) {
+        Price price = new Price(getProductCode(row), numbers[row], departs[row],
+                new Date(begins[row]), new Date(ends[row]), values[row]);
+        price.setId(ids[row]);
+        return price;
+    }
+
+    public PricePeriod getPricePeriod(int row) {
+        return new PricePeriod(ids[row], productCodeIds[row], numbers[row], departs[row], begins[row], ends[row], values[row]);
+    }
+
+    public ProductCodeDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public long getId(int row) {
+        return ids[row];
+    }
+
+    public int getProductCodeId(int row) {
+        return productCodeIds[row];
+    }
+
+    public String getProductCode(int row) {
+        return dictionary.getCode(productCodeIds[row]);
+    }
+
+    public int getNumber(int row) {
+        return numbers[row];
+    }
+
+    public int getDepart(int row) {
+        return departs[row];
+    }
+
+    public long getBegin(int row) {
+        return begins[row];
+    }
+
+    public long getEnd(int row) {
+        return ends[row];
+    }
+
+    public long getValue(int row) {
+        return values[row];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        productCodeIds = Arrays.copyOf(productCodeIds, capacity);
+        numbers = Arrays.copyOf(numbers, capacity);
+        departs = Arrays.copyOf(departs, capacity);
+        begins = Arrays.copyOf(begins, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        values = Arrays.copyOf(values, capacity);
+    }
+}
@@ -0,0 +1,85 @@
+package domain;
+
+import java.util.*;
+
+/**
+ * Immutable prices of one key ordered by period begin.
+ * <p>
+ * Periods are expected not to overlap, as they are after a merge. A period includes its
+ * begin and excludes its end, so at a bound the later price applies.
+ */
+public final class PriceTimeline {
+    private static final PriceTimeline EMPTY = new PriceTimeline(new PricePeriod[0]);
+
+    private final PricePeriod[] prices;
+    private final long[] begins;
+
+    private PriceTimeline(PricePeriod[] prices) {
+        this.prices = prices;
+        this.begins = new long[prices.length];
+        for (int i = 0; i < prices.length; i++) {
+            begins[i] = prices[i].getBegin();
+        }
+    }
+
+    public static PriceTimeline empty() {
+        return EMPTY;
+    }
+
+    public static PriceTimeline of(Collection<PricePeriod> prices) {
+        if (prices.isEmpty()) {
+            return EMPTY;
+        }
+        PricePeriod[] sortedPrices = prices.toArray(new PricePeriod[0]);
+        Arrays.sort(sortedPrices, Comparator.comparingLong(PricePeriod::getBegin));
+        return new PriceTimeline(sortedPrices);
+    }
+
+    /**
+     * Returns the price at the instant or null if there is no price.
+     */
+    public PricePeriod find(long instant) {
+        int index = Arrays.binarySearch(begins, instant);
+        if (index < 0) {
+            index = -index - 2;
+        } else {
+            while (index + 1 < begins.length && begins[index + 1] == instant) {
+                index++;
+            }
+        }
+
+        if (index < 0 || instant >= prices[index].getEnd()) {
+            return null;
+        }
+        return prices[index];
+    }
+
+    public List<PricePeriod> getPrices() {
+        return Collections.unmodifiableList(Arrays.asList(prices));
+    }
+
+    public int size() {
+        return prices.length;
+    }
+
+    public boolean isEmpty() {
+        return prices.length == 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return Arrays.equals(prices, ((PriceTimeline) o).prices);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(prices);
+    }
+
+    @Override
+    public String toString() {
+        return "PriceTimeline" + Arrays.toString(prices);
+    }
+}
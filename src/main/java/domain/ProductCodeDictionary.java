@@ -0,0 +1,58 @@
+package domain;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps product codes to dense int ids starting from zero.
+ * <p>
+ * Ids are assigned in the order codes are first seen and never change. Lookups are lock free,
+ * only assigning a new id is synchronized.
+ */
+public class ProductCodeDictionary {
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] codes = new String[16];
+    private volatile int size;
+
+    public int getId(String productCode) {
+        Integer id = ids.get(productCode);
+        if (id != null) {
+            return id;
+        }
+
+        synchronized (this) {
+            id = ids.get(productCode);
+            if (id == null) {
+                id = size;
+                String[] currentCodes = codes;
+                if (id == currentCodes.length) {
+                    currentCodes = Arrays.copyOf(currentCodes, id * 2);
+                }
+                currentCodes[id] = productCode;
+                codes = currentCodes;
+                size = id + 1;
+                ids.put(productCode, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Returns id of the product code or -1 if the code is unknown.
+     */
+    public int findId(String productCode) {
+        Integer id = ids.get(productCode);
+        return id == null ? -1 : id;
+    }
+
+    public String getCode(int id) {
+        if (id < 0 || id >= size) {
+            throw new IllegalArgumentException("Unknown product code id " + id);
+        }
+        return codes[id];
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,61 @@
+package services;
+
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Stable sort of row indexes, so columnar data can be ordered without boxing.
+ */
+class IndexSort {
+
+    private IndexSort() {
+    }
+
+    static int[] range(int count) {
+        int[] indexes = new int[count];
+        for (int i = 0; i < count; i++) {
+            indexes[i] = i;
+        }
+        return indexes;
+    }
+
+    static void sort(int[] indexes, int count, IntBinaryOperator comparator) {
+        if (count < 2) {
+            return;
+        }
+        int[] buffer = new int[count];
+        sort(indexes, buffer, 0, count, comparator);
+    }
+
+    private static void sort(int[] indexes, int[] buffer, int from, int to, IntBinaryOperator comparator) {
+        if (to - from <= 16) {
+            for (int i = from + 1; i < to; i++) {
+                int index = indexes[i];
+                int j = i - 1;
+                while (j >= from && comparator.applyAsInt(indexes[j], index) > 0) {
+                    indexes[j + 1] = indexes[j];
+                    j--;
+                }
+                indexes[j + 1] = index;
+            }
+            return;
+        }
+
+        int middle = (from + to) >>> 1;
+        sort(indexes, buffer, from, middle, comparator);
+        sort(indexes, buffer, middle, to, comparator);
+        if (comparator.applyAsInt(indexes[middle - 1], indexes[middle]) <= 0) {
+            return;
+        }
+
+        System.arraycopy(indexes, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && comparator.applyAsInt(buffer[left], buffer[right]) <= 0)) {
+                indexes[i] = buffer[left++];
+            } else {
+                indexes[i] = buffer[right++];
+            }
+        }
+    }
+}
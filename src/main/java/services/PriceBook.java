@@ -0,0 +1,109 @@
+package services;
+
+import domain.PriceKey;
+import domain.PricePeriod;
+import domain.PriceTimeline;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Prices of all keys which can be joined and read from many threads.
+ * <p>
+ * Every key holds an immutable {@link PriceTimeline}. Joins of a key are serialized by one
+ * of the striped locks and publish a new timeline, so joins of different keys run in parallel
+ * and readers get a consistent snapshot of a key without any locking. A join of several keys
+ * is applied key by key and is not atomic across keys.
+ */
+public class PriceBook {
+    private static final int DEFAULT_STRIPES = 64;
+
+    private final PriceService priceService;
+    private final ConcurrentHashMap<PriceKey, PriceTimeline> timelines = new ConcurrentHashMap<>();
+    private final ReentrantLock[] locks;
+
+    public PriceBook(PriceService priceService) {
+        this(priceService, DEFAULT_STRIPES);
+    }
+
+    public PriceBook(PriceService priceService, int stripes) {
+        this.priceService = priceService;
+        int size = Integer.highestOneBit(Math.max(stripes - 1, 1)) << 1;
+        this.locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Joins new prices with prices of the book.
+     *
+     * @return keys which prices have been changed.
+     */
+    public Set<PriceKey> apply(Collection<PricePeriod> newPrices) {
+        Set<PriceKey> result = new LinkedHashSet<>();
+
+        for (Map.Entry<PriceKey, Collection<PricePeriod>> entry : priceService.groupPricePeriodsByKey(newPrices).entrySet()) {
+            if (apply(entry.getKey(), entry.getValue())) {
+                result.add(entry.getKey());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Joins new prices of a single key with prices of the book.
+     *
+     * @return true if prices of the key have been changed.
+     */
+    public boolean apply(PriceKey key, Collection<PricePeriod> newPrices) {
+        ReentrantLock lock = getLock(key);
+        lock.lock();
+        try {
+            PriceTimeline timeline = getTimeline(key);
+            List<PricePeriod> mergedPrices = priceService.mergeKeyPricePeriods(timeline.getPrices(), newPrices);
+            if (mergedPrices.equals(timeline.getPrices())) {
+                return false;
+            }
+
+            if (mergedPrices.isEmpty()) {
+                timelines.remove(key);
+            } else {
+                timelines.put(key, PriceTimeline.of(mergedPrices));
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the current snapshot of prices of the key, it is never changed by later joins.
+     */
+    public PriceTimeline getTimeline(PriceKey key) {
+        PriceTimeline timeline = timelines.get(key);
+        return timeline == null ? PriceTimeline.empty() : timeline;
+    }
+
+    /**
+     * Returns the price of the key at the instant or null if there is no price.
+     */
+    public PricePeriod findPrice(PriceKey key, long instant) {
+        return getTimeline(key).find(instant);
+    }
+
+    public Set<PriceKey> getKeys() {
+        return Collections.unmodifiableSet(timelines.keySet());
+    }
+
+    public int size() {
+        return timelines.size();
+    }
+
+    private ReentrantLock getLock(PriceKey key) {
+        int hash = key.hashCode();
+        return locks[(hash ^ (hash >>> 16)) & (locks.length - 1)];
+    }
+}
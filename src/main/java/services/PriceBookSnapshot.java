@@ -0,0 +1,58 @@
+package services;
+
+import domain.PriceKey;
+import domain.PricePeriod;
+import domain.PriceTimeline;
+
+import java.util.*;
+
+/**
+ * Immutable prices of all keys as of a version of a {@link VersionedPriceBook}.
+ */
+public final class PriceBookSnapshot {
+    private final long version;
+    private final PriceTimelineTrie timelines;
+
+    PriceBookSnapshot(long version, PriceTimelineTrie timelines) {
+        this.version = version;
+        this.timelines = timelines;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public PriceTimeline getTimeline(PriceKey key) {
+        PriceTimeline timeline = timelines.get(key);
+        return timeline == null ? PriceTimeline.empty() : timeline;
+    }
+
+    /**
+     * Returns the price of the key at the instant or null if there is no price.
+     */
+    public PricePeriod findPrice(PriceKey key, long instant) {
+        return getTimeline(key).find(instant);
+    }
+
+    public Set<PriceKey> getKeys() {
+        Set<PriceKey> result = new HashSet<>();
+        timelines.forEach((key, timeline) -> result.add(key));
+        return result;
+    }
+
+    public int size() {
+        return timelines.size();
+    }
+
+    PriceTimelineTrie getTimelines() {
+        return timelines;
+    }
+
+    @Override
+    public String toString() {
+        return "PriceBookSnapshot{" +
+                "version=" + version +
+                ", size=" + size() +
+                '}';
+    }
+}
@@ -0,0 +1,394 @@
+package services;
+
+import domain.PriceKey;
+import domain.PricePeriod;
+import domain.ProductCodeDictionary;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Loads prices from CSV files with lines of productCode,number,depart,begin,end,value
+ * where begin and end are formatted as dd.MM.yyyy HH:mm:ss in the loader time zone.
+ * Empty lines and lines starting with # are skipped.
+ * <p>
+ * A file is split into chunks aligned to line ends, every chunk is memory mapped and parsed
+ * in the pool. Numbers and timestamps are parsed directly from bytes. Prices are returned in
+ * the order of the file, so later lines take precedence when they are joined. Product codes
+ * are looked up in the dictionary by their bytes, a string is created only for a code new to
+ * the chunk.
+ */
+public class PriceCsvLoader {
+    private static final int DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+    private final ProductCodeDictionary dictionary;
+    private final TimeZone timeZone;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    public PriceCsvLoader(ProductCodeDictionary dictionary) {
+        this(dictionary, TimeZone.getDefault(), ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    public PriceCsvLoader(ProductCodeDictionary dictionary, TimeZone timeZone, ForkJoinPool pool, int chunkSize) {
+        this.dictionary = dictionary;
+        this.timeZone = (TimeZone) timeZone.clone();
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    public List<PricePeriod> load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] bounds = getChunkBounds(channel);
+
+            List<List<PricePeriod>> chunks = pool.submit(() -> IntStream.range(0, bounds.length - 1)
+                    .parallel()
+                    .mapToObj(chunk -> parseChunk(channel, bounds[chunk], bounds[chunk + 1]))
+                    .collect(Collectors.toList()))
+                    .join();
+
+            ArrayList<PricePeriod> result = new ArrayList<>(chunks.stream().mapToInt(List::size).sum());
+            for (List<PricePeriod> chunk : chunks) {
+                result.addAll(chunk);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Loads prices grouped by key, keys are in the order of their first line.
+     */
+    public Map<PriceKey, Collection<PricePeriod>> loadByKey(Path file) throws IOException {
+        Map<PriceKey, Collection<PricePeriod>> result = new LinkedHashMap<>();
+        for (PricePeriod price : load(file)) {
+            result.computeIfAbsent(PriceKey.of(price), key -> new ArrayList<>()).add(price);
+        }
+        return result;
+    }
+
+    /**
+     * Loads prices and joins them with the book chunk by chunk, so only the chunks being parsed
+     * are held in memory. Chunks are parsed ahead in parallel and joined in the order of the
+     * file, prices of a chunk are grouped by key and the keys are joined in parallel in the pool.
+     * The book has to share the dictionary of the loader.
+     * <p>
+     * Loading stops at the first malformed chunk, chunks before it stay joined with the book,
+     * so the book is left updated up to the last good chunk. Chunks parsed ahead are cancelled
+     * and awaited before the method fails.
+     *
+     * @return keys which prices have been changed.
+     */
+    public Set<PriceKey> loadInto(Path file, PriceBook priceBook) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] bounds = getChunkBounds(channel);
+            int chunks = bounds.length - 1;
+
+            Set<PriceKey> result = ConcurrentHashMap.newKeySet();
+            ArrayDeque<ForkJoinTask<List<PricePeriod>>> parsedChunks = new ArrayDeque<>();
+            AtomicBoolean cancelled = new AtomicBoolean();
+            try {
+                int nextChunk = 0;
+                for (int chunk = 0; chunk < chunks; chunk++) {
+                    while (nextChunk < chunks && parsedChunks.size() <= pool.getParallelism()) {
+                        long begin = bounds[nextChunk];
+                        long end = bounds[nextChunk + 1];
+                        parsedChunks.add(pool.submit(() -> cancelled.get()
+                                ? Collections.<PricePeriod>emptyList()
+                                : parseChunk(channel, begin, end)));
+                        nextChunk++;
+                    }
+
+                    Map<PriceKey, Collection<PricePeriod>> keyPrices = new LinkedHashMap<>();
+                    for (PricePeriod price : parsedChunks.remove().join()) {
+                        keyPrices.computeIfAbsent(PriceKey.of(price), key -> new ArrayList<>()).add(price);
+                    }
+                    pool.submit(() -> keyPrices.entrySet().parallelStream().forEach(entry -> {
+                        if (priceBook.apply(entry.getKey(), entry.getValue())) {
+                            result.add(entry.getKey());
+                        }
+                    })).join();
+                }
+            } finally {
+                // a task already parsing can not be stopped, so it is awaited before the channel is closed
+                cancelled.set(true);
+                for (ForkJoinTask<List<PricePeriod>> parsedChunk : parsedChunks) {
+                    parsedChunk.quietlyJoin();
+                }
+            }
+            return result;
+        }
+    }
+
+    private long[] getChunkBounds(FileChannel channel) throws IOException {
+        long size = channel.size();
+        ArrayList<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long position = chunkSize;
+        while (position < size) {
+            long lineEnd = -1;
+            while (lineEnd < 0 && position < size) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                for (int i = 0; i < read && lineEnd < 0; i++) {
+                    if (buffer.get(i) == '\n') {
+                        lineEnd = position + i + 1;
+                    }
+                }
+                position += Math.max(read, 0);
+            }
+            if (lineEnd < 0 || lineEnd >= size) {
+                break;
+            }
+            bounds.add(lineEnd);
+            position = lineEnd + chunkSize;
+        }
+        bounds.add(size);
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    private List<PricePeriod> parseChunk(FileChannel channel, long begin, long end) {
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, begin, end - begin);
+            return new ChunkParser(buffer, begin).parse();
+        } catch (IOException e) {
+            throw new IllegalStateException("Can not read prices at byte " + begin, e);
+        }
+    }
+
+    private class ChunkParser {
+        private final ByteBuffer buffer;
+        private final long offset;
+        private final ProductCodeCache productCodes = new ProductCodeCache();
+        private byte[] text = new byte[64];
+        private int position;
+        private int lineBegin;
+
+        private ChunkParser(ByteBuffer buffer, long offset) {
+            this.buffer = buffer;
+            this.offset = offset;
+        }
+
+        private List<PricePeriod> parse() {
+            ArrayList<PricePeriod> result = new ArrayList<>();
+            int limit = buffer.limit();
+
+            while (position < limit) {
+                lineBegin = position;
+                byte first = buffer.get(position);
+                if (first == '\n' || first == '\r' || first == '#') {
+                    skipLine(limit);
+                    continue;
+                }
+
+                int productCodeId = parseProductCode();
+                int number = parseInt(',');
+                int depart = parseInt(',');
+                long begin = parseTimestamp(',');
+                long end = parseTimestamp(',');
+                long value = parseLong('\n');
+                result.add(new PricePeriod(0, productCodeId, number, depart, begin, end, value));
+            }
+
+            return result;
+        }
+
+        private void skipLine(int limit) {
+            while (position < limit && buffer.get(position++) != '\n') {
+            }
+        }
+
+        private int parseProductCode() {
+            int length = 0;
+            int hash = 0;
+            byte current;
+            while ((current = next()) != ',') {
+                if (current == '\n') {
+                    throw malformed();
+                }
+                if (length == text.length) {
+                    text = Arrays.copyOf(text, length * 2);
+                }
+                text[length++] = current;
+                hash = hash * 31 + current;
+            }
+            return productCodes.getId(text, length, hash);
+        }
+
+        private int parseInt(char separator) {
+            long result = parseLong(separator);
+            if (result < Integer.MIN_VALUE || result > Integer.MAX_VALUE) {
+                throw malformed();
+            }
+            return (int) result;
+        }
+
+        private long parseLong(char separator) {
+            long result = 0;
+            boolean negative = false;
+            int digits = 0;
+            byte current = next();
+            if (current == '-') {
+                negative = true;
+                current = next();
+            }
+            while (current >= '0' && current <= '9') {
+                if (result > (Long.MAX_VALUE - (current - '0')) / 10) {
+                    throw malformed();
+                }
+                result = result * 10 + (current - '0');
+                digits++;
+                current = next();
+            }
+            if (current == '\r' && separator == '\n') {
+                current = next();
+            }
+            if (digits == 0 || current != separator) {
+                throw malformed();
+            }
+            return negative ? -result : result;
+        }
+
+        private long parseTimestamp(char separator) {
+            int day = parseDigits(2, '.');
+            int month = parseDigits(2, '.');
+            int year = parseDigits(4, ' ');
+            int hours = parseDigits(2, ':');
+            int minutes = parseDigits(2, ':');
+            int seconds = parseDigits(2, separator);
+            if (month < 1 || month > 12 || day < 1 || day > 31 || hours > 23 || minutes > 59 || seconds > 59) {
+                throw malformed();
+            }
+
+            long localMillis = daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                    + ((hours * 60L + minutes) * 60L + seconds) * 1000L;
+            int offset = timeZone.getOffset(localMillis - timeZone.getRawOffset());
+            int actualOffset = timeZone.getOffset(localMillis - offset);
+            return localMillis - actualOffset;
+        }
+
+        private int parseDigits(int count, char separator) {
+            int result = 0;
+            for (int i = 0; i < count; i++) {
+                byte current = next();
+                if (current < '0' || current > '9') {
+                    throw malformed();
+                }
+                result = result * 10 + (current - '0');
+            }
+            if (next() != separator) {
+                throw malformed();
+            }
+            return result;
+        }
+
+        /**
+         * Returns the next byte, the end of the chunk is read as the end of line.
+         */
+        private byte next() {
+            if (position >= buffer.limit()) {
+                position++;
+                return '\n';
+            }
+            return buffer.get(position++);
+        }
+
+        private IllegalArgumentException malformed() {
+            return new IllegalArgumentException("Malformed price at byte " + (offset + lineBegin));
+        }
+    }
+
+    /**
+     * Ids of product codes met in a chunk by their bytes, an open addressing hash table.
+     */
+    private class ProductCodeCache {
+        private byte[][] codes = new byte[64][];
+        private int[] hashes = new int[64];
+        private int[] ids = new int[64];
+        private int size;
+
+        private int getId(byte[] text, int length, int hash) {
+            int mask = codes.length - 1;
+            int index = (hash ^ (hash >>> 16)) & mask;
+            while (codes[index] != null) {
+                if (hashes[index] == hash && equals(codes[index], text, length)) {
+                    return ids[index];
+                }
+                index = (index + 1) & mask;
+            }
+
+            int id = dictionary.getId(new String(text, 0, length, StandardCharsets.UTF_8));
+            codes[index] = Arrays.copyOf(text, length);
+            hashes[index] = hash;
+            ids[index] = id;
+            if (++size * 2 > codes.length) {
+                resize();
+            }
+            return id;
+        }
+
+        private boolean equals(byte[] code, byte[] text, int length) {
+            if (code.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (code[i] != text[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void resize() {
+            byte[][] oldCodes = codes;
+            int[] oldHashes = hashes;
+            int[] oldIds = ids;
+            codes = new byte[oldCodes.length * 2][];
+            hashes = new int[codes.length];
+            ids = new int[codes.length];
+            int mask = codes.length - 1;
+            for (int i = 0; i < oldCodes.length; i++) {
+                if (oldCodes[i] != null) {
+                    int index = (oldHashes[i] ^ (oldHashes[i] >>> 16)) & mask;
+                    while (codes[index] != null) {
+                        index = (index + 1) & mask;
+                    }
+                    codes[index] = oldCodes[i];
+                    hashes[index] = oldHashes[i];
+                    ids[index] = oldIds[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Days since 1970-01-01 of the proleptic Gregorian date.
+     */
+    static long daysFromCivil(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        long era = Math.floorDiv(year, 400);
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
@@ -0,0 +1,241 @@
+package services;
+
+import domain.PriceKey;
+import domain.PricePeriod;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Joins single price updates into a {@link PriceBook} in micro-batches.
+ * <p>
+ * Updates are put into a bounded queue, a full queue blocks submitters until the pipeline catches
+ * up. A dispatcher thread takes up to maxBatchSize updates, waiting at most maxBatchDelay after
+ * the first one, groups them by key and joins every key on the worker threads. A batch is applied
+ * completely before the next one is taken, so updates of a key are applied in submit order.
+ * <p>
+ * Within a batch an update which period is covered by later updates of the same key is dropped
+ * before the join, it would be overwritten by them anyway. The future of every update, dropped
+ * ones included, is completed once the prices of its key are joined, with true if they changed.
+ * A failed join completes futures of its updates exceptionally and the pipeline goes on, if the
+ * dispatcher stops all queued updates are failed.
+ */
+public class PriceIngestionPipeline implements AutoCloseable {
+    private final PriceBook priceBook;
+    private final BlockingQueue<Update> queue;
+    private final int maxBatchSize;
+    private final long maxBatchDelayNanos;
+    private final ExecutorService workers;
+    private final Thread dispatcher;
+    private final ReentrantReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private volatile boolean closed;
+    private volatile boolean stopped;
+
+    public PriceIngestionPipeline(PriceBook priceBook, int queueCapacity, int maxBatchSize,
+                                  long maxBatchDelay, TimeUnit unit, int workerCount) {
+        this.priceBook = priceBook;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelayNanos = unit.toNanos(maxBatchDelay);
+        this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "price-ingestion-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.dispatcher = new Thread(this::dispatch, "price-ingestion-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Puts the update into the queue, waiting while the queue is full.
+     *
+     * @return future completed when the update is joined, with true if prices of its key changed.
+     * @throws IllegalStateException if the pipeline is closed.
+     */
+    public CompletableFuture<Boolean> submit(PricePeriod price) throws InterruptedException {
+        Update update = new Update(Objects.requireNonNull(price, "price"));
+        closeLock.readLock().lockInterruptibly();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Price ingestion pipeline is closed");
+            }
+            while (!queue.offer(update, 100, TimeUnit.MILLISECONDS)) {
+                if (stopped) {
+                    throw new IllegalStateException("Price ingestion pipeline is stopped");
+                }
+            }
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        return update.future;
+    }
+
+    /**
+     * Returns the number of updates waiting in the queue.
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Stops accepting updates, applies updates already in the queue and stops the threads.
+     */
+    @Override
+    public void close() {
+        closeLock.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    private void dispatch() {
+        List<Update> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (!closed || !queue.isEmpty()) {
+                Update first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                fillBatch(batch);
+
+                try {
+                    apply(batch);
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Throwable e) {
+                    fail(batch, e);
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stopped = true;
+            IllegalStateException cause = new IllegalStateException("Price ingestion pipeline is stopped");
+            fail(batch, cause);
+
+            // submitters which got into the queue are done once the write lock is taken
+            closeLock.writeLock().lock();
+            try {
+                List<Update> queuedUpdates = new ArrayList<>();
+                queue.drainTo(queuedUpdates);
+                fail(queuedUpdates, cause);
+            } finally {
+                closeLock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void fillBatch(List<Update> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + maxBatchDelayNanos;
+        while (batch.size() < maxBatchSize) {
+            if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                continue;
+            }
+            Update update = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (update == null) {
+                return;
+            }
+            batch.add(update);
+        }
+    }
+
+    /**
+     * Completes exceptionally futures of updates which are not completed yet.
+     */
+    private static void fail(List<Update> updates, Throwable cause) {
+        for (Update update : updates) {
+            update.future.completeExceptionally(cause);
+        }
+    }
+
+    private void apply(List<Update> batch) throws InterruptedException {
+        Map<PriceKey, List<Update>> keyUpdates = new LinkedHashMap<>();
+        for (Update update : batch) {
+            keyUpdates.computeIfAbsent(PriceKey.of(update.price), key -> new ArrayList<>()).add(update);
+        }
+
+        CountDownLatch applied = new CountDownLatch(keyUpdates.size());
+        for (Map.Entry<PriceKey, List<Update>> entry : keyUpdates.entrySet()) {
+            workers.execute(() -> {
+                try {
+                    apply(entry.getKey(), entry.getValue());
+                } finally {
+                    applied.countDown();
+                }
+            });
+        }
+        applied.await();
+    }
+
+    private void apply(PriceKey key, List<Update> updates) {
+        try {
+            List<PricePeriod> prices = new ArrayList<>(updates.size());
+            for (Update update : updates) {
+                prices.add(update.price);
+            }
+            boolean changed = priceBook.apply(key, getLatestPrices(prices));
+            for (Update update : updates) {
+                update.future.complete(changed);
+            }
+        } catch (Throwable e) {
+            fail(updates, e);
+        }
+    }
+
+    /**
+     * Returns prices of a key in the same order without the ones covered by later prices.
+     */
+    static List<PricePeriod> getLatestPrices(List<PricePeriod> prices) {
+        // begins to ends of disjoint periods covered by later updates
+        TreeMap<Long, Long> coveredPeriods = new TreeMap<>();
+        LinkedList<PricePeriod> result = new LinkedList<>();
+
+        for (ListIterator<PricePeriod> iterator = prices.listIterator(prices.size()); iterator.hasPrevious(); ) {
+            PricePeriod price = iterator.previous();
+            long begin = price.getBegin();
+            long end = price.getEnd();
+
+            Map.Entry<Long, Long> covered = coveredPeriods.floorEntry(begin);
+            if (covered != null && covered.getValue() >= end) {
+                continue;
+            }
+            result.addFirst(price);
+
+            if (covered != null && covered.getValue() >= begin) {
+                begin = covered.getKey();
+                end = Math.max(end, covered.getValue());
+            }
+            Map.Entry<Long, Long> next;
+            while ((next = coveredPeriods.ceilingEntry(begin)) != null && next.getKey() <= end) {
+                end = Math.max(end, next.getValue());
+                coveredPeriods.remove(next.getKey());
+            }
+            coveredPeriods.put(begin, end);
+        }
+
+        return result;
+    }
+
+    private static class Update {
+        private final PricePeriod price;
+        private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        private Update(PricePeriod price) {
+            this.price = price;
+        }
+    }
+}
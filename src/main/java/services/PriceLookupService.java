@@ -0,0 +1,134 @@
+package services;
+
+import domain.PriceKey;
+import domain.PricePeriod;
+import domain.PriceTimeline;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Answers which price a key has at an instant.
+ * <p>
+ * Prices of a key are loaded once into a {@link PriceTimeline} and kept in a bounded least
+ * recently used cache, so a lookup of a hot key is a binary search. Keys changed by a join
+ * have to be invalidated, lookups backed by a {@link PriceStore} are invalidated by the store
+ * until the service is closed. A timeline loaded while its key is invalidated is not cached.
+ */
+public class PriceLookupService implements AutoCloseable {
+    private final PriceLoader loader;
+    private final int cacheSize;
+    private final LinkedHashMap<PriceKey, PriceTimeline> cache;
+    // keys being loaded, guarded by the cache lock
+    private final Map<PriceKey, KeyLoads> loads = new HashMap<>();
+    private final PriceStore store;
+    private final Consumer<PriceKey> storeListener = this::invalidate;
+
+    public PriceLookupService(PriceLoader loader, int cacheSize) {
+        this(loader, cacheSize, null);
+    }
+
+    public PriceLookupService(PriceStore store, int cacheSize) {
+        this(store::read, cacheSize, store);
+        store.addWriteListener(storeListener);
+    }
+
+    private PriceLookupService(PriceLoader loader, int cacheSize, PriceStore store) {
+        this.loader = loader;
+        this.cacheSize = cacheSize;
+        this.store = store;
+        this.cache = new LinkedHashMap<PriceKey, PriceTimeline>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PriceKey, PriceTimeline> eldest) {
+                return size() > PriceLookupService.this.cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the price of the key at the instant or null if there is no price.
+     */
+    public PricePeriod findPrice(PriceKey key, long instant) throws IOException {
+        return getTimeline(key).find(instant);
+    }
+
+    public PriceTimeline getTimeline(PriceKey key) throws IOException {
+        KeyLoads keyLoads;
+        long generation;
+        synchronized (cache) {
+            PriceTimeline timeline = cache.get(key);
+            if (timeline != null) {
+                return timeline;
+            }
+            keyLoads = loads.computeIfAbsent(key, k -> new KeyLoads());
+            keyLoads.count++;
+            generation = keyLoads.generation;
+        }
+
+        PriceTimeline timeline = null;
+        try {
+            timeline = PriceTimeline.of(loader.load(key));
+        } finally {
+            synchronized (cache) {
+                if (timeline != null && generation == keyLoads.generation) {
+                    cache.put(key, timeline);
+                }
+                if (--keyLoads.count == 0) {
+                    loads.remove(key);
+                }
+            }
+        }
+        return timeline;
+    }
+
+    public void invalidate(PriceKey key) {
+        synchronized (cache) {
+            invalidateKey(key);
+        }
+    }
+
+    public void invalidate(Collection<PriceKey> keys) {
+        synchronized (cache) {
+            for (PriceKey key : keys) {
+                invalidateKey(key);
+            }
+        }
+    }
+
+    public int getCachedKeysCount() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Stops invalidation of keys written to the store, if the service is backed by a store.
+     */
+    @Override
+    public void close() {
+        if (store != null) {
+            store.removeWriteListener(storeListener);
+        }
+    }
+
+    private void invalidateKey(PriceKey key) {
+        cache.remove(key);
+        KeyLoads keyLoads = loads.get(key);
+        if (keyLoads != null) {
+            keyLoads.generation++;
+        }
+    }
+
+    public interface PriceLoader {
+        List<PricePeriod> load(PriceKey key) throws IOException;
+    }
+
+    /**
+     * Loads of a key in progress, the generation is changed by every invalidation of the key.
+     */
+    private static class KeyLoads {
+        private int count;
+        private long generation;
+    }
+}
@@ -0,0 +1,42 @@
+package services;
+
+import services.PriceService.TimePeriodRelation;
+
+/**
+ * Receives statistics of price joins made by {@link PriceService}.
+ * <p>
+ * The service skips collecting statistics at all while no listener is set.
+ * Methods can be called from several threads at once.
+ */
+public interface PriceMergeListener {
+
+    /**
+     * Called for every existed price changed by a new price of a different value.
+     * <p>
+     * Sweep merges report an existed price split in several pieces as {@link TimePeriodRelation#OCCURRENCE},
+     * trimmed at the end as {@link TimePeriodRelation#FORWARD_OFFSET}, trimmed at the begin as
+     * {@link TimePeriodRelation#BACKWARD_OFFSET} and removed as {@link TimePeriodRelation#ABSORPTION}.
+     */
+    default void onRelation(TimePeriodRelation relation) {
+    }
+
+    /**
+     * Called when prices with the same value are merged into one.
+     *
+     * @param count number of prices merged into another one.
+     */
+    default void onPricesMerged(int count) {
+    }
+
+    /**
+     * Called when a join of a batch is finished.
+     *
+     * @param inputCount      number of existed and new prices.
+     * @param outputCount     number of resulting prices.
+     * @param largestKeyGroup number of existed and new prices of the largest key,
+     *                        0 if the join does not group prices by key.
+     * @param nanos           duration of the join.
+     */
+    default void onBatch(int inputCount, int outputCount, int largestKeyGroup, long nanos) {
+    }
+}
@@ -0,0 +1,162 @@
+package services;
+
+import services.PriceService.TimePeriodRelation;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects join statistics of a {@link PriceService} and exposes them through JMX.
+ * <p>
+ * Batch latencies are counted in buckets of powers of two milliseconds.
+ */
+public class PriceMergeStatistics implements PriceMergeListener, PriceMergeStatisticsMBean {
+    private static final int LATENCY_BUCKETS = 18;
+
+    private final LongAdder[] relations = new LongAdder[TimePeriodRelation.values().length];
+    private final LongAdder mergedPrices = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder inputPrices = new LongAdder();
+    private final LongAdder outputPrices = new LongAdder();
+    private final LongAdder totalBatchNanos = new LongAdder();
+    private final LongAccumulator largestKeyGroup = new LongAccumulator(Math::max, 0);
+    private final AtomicLongArray latencyHistogram = new AtomicLongArray(LATENCY_BUCKETS);
+
+    public PriceMergeStatistics() {
+        for (int i = 0; i < relations.length; i++) {
+            relations[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Registers statistics in the platform MBean server under crystal:type=PriceMergeStatistics,name=...
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("crystal:type=PriceMergeStatistics,name=" + ObjectName.quote(name));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.registerMBean(this, objectName);
+        return objectName;
+    }
+
+    @Override
+    public void onRelation(TimePeriodRelation relation) {
+        relations[relation.ordinal()].increment();
+    }
+
+    @Override
+    public void onPricesMerged(int count) {
+        mergedPrices.add(count);
+    }
+
+    @Override
+    public void onBatch(int inputCount, int outputCount, int largestKeyGroup, long nanos) {
+        batches.increment();
+        inputPrices.add(inputCount);
+        outputPrices.add(outputCount);
+        totalBatchNanos.add(nanos);
+        this.largestKeyGroup.accumulate(largestKeyGroup);
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = millis == 0 ? 0 : 64 - Long.numberOfLeadingZeros(millis);
+        latencyHistogram.incrementAndGet(Math.min(bucket, LATENCY_BUCKETS - 1));
+    }
+
+    public long getRelationCount(TimePeriodRelation relation) {
+        return relations[relation.ordinal()].sum();
+    }
+
+    @Override
+    public long getForwardOffsetCount() {
+        return getRelationCount(TimePeriodRelation.FORWARD_OFFSET);
+    }
+
+    @Override
+    public long getBackwardOffsetCount() {
+        return getRelationCount(TimePeriodRelation.BACKWARD_OFFSET);
+    }
+
+    @Override
+    public long getOccurrenceCount() {
+        return getRelationCount(TimePeriodRelation.OCCURRENCE);
+    }
+
+    @Override
+    public long getAbsorptionCount() {
+        return getRelationCount(TimePeriodRelation.ABSORPTION);
+    }
+
+    @Override
+    public long getMatchCount() {
+        return getRelationCount(TimePeriodRelation.MATCH);
+    }
+
+    @Override
+    public long getMergedPricesCount() {
+        return mergedPrices.sum();
+    }
+
+    @Override
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    @Override
+    public long getInputPricesCount() {
+        return inputPrices.sum();
+    }
+
+    @Override
+    public long getOutputPricesCount() {
+        return outputPrices.sum();
+    }
+
+    @Override
+    public long getLargestKeyGroup() {
+        return largestKeyGroup.get();
+    }
+
+    @Override
+    public long getTotalBatchNanos() {
+        return totalBatchNanos.sum();
+    }
+
+    @Override
+    public long[] getLatencyBucketBounds() {
+        long[] result = new long[LATENCY_BUCKETS - 1];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = 1L << i;
+        }
+        return result;
+    }
+
+    @Override
+    public long[] getLatencyHistogram() {
+        long[] result = new long[LATENCY_BUCKETS];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = latencyHistogram.get(i);
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder relation : relations) {
+            relation.reset();
+        }
+        mergedPrices.reset();
+        batches.reset();
+        inputPrices.reset();
+        outputPrices.reset();
+        totalBatchNanos.reset();
+        largestKeyGroup.reset();
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            latencyHistogram.set(i, 0);
+        }
+    }
+}
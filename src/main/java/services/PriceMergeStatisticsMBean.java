@@ -0,0 +1,38 @@
+package services;
+
+/**
+ * JMX view of {@link PriceMergeStatistics}.
+ */
+public interface PriceMergeStatisticsMBean {
+
+    long getForwardOffsetCount();
+
+    long getBackwardOffsetCount();
+
+    long getOccurrenceCount();
+
+    long getAbsorptionCount();
+
+    long getMatchCount();
+
+    long getMergedPricesCount();
+
+    long getBatchCount();
+
+    long getInputPricesCount();
+
+    long getOutputPricesCount();
+
+    long getLargestKeyGroup();
+
+    long getTotalBatchNanos();
+
+    /**
+     * Upper bounds in milliseconds of the batch latency histogram buckets, the last bucket has no bound.
+     */
+    long[] getLatencyBucketBounds();
+
+    long[] getLatencyHistogram();
+
+    void reset();
+}
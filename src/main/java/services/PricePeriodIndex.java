@@ -0,0 +1,122 @@
+package services;
+
+import domain.Price;
+
+import java.util.*;
+
+/**
+ * Prices of one key ordered by period begin.
+ * <p>
+ * While indexed prices do not overlap, a lookup starts from the last price beginning before the
+ * requested period, so intersected prices are found in O(log n + k). Once overlapping prices are
+ * added, lookups visit all prices beginning within the longest known period before the requested
+ * one, until the index gets empty again.
+ */
+public class PricePeriodIndex {
+    private final TreeMap<Long, List<Price>> pricesByBegin = new TreeMap<>();
+    private long maxPeriodLength;
+    private boolean overlapping;
+    private int size;
+
+    public PricePeriodIndex() {
+    }
+
+    public PricePeriodIndex(Collection<Price> prices) {
+        addAll(prices);
+    }
+
+    public void add(Price price) {
+        long begin = price.getBegin().getTime();
+        long end = price.getEnd().getTime();
+        maxPeriodLength = Math.max(maxPeriodLength, end - begin);
+        if (!overlapping) {
+            overlapping = isOverlapped(begin, end);
+        }
+        pricesByBegin.computeIfAbsent(begin, key -> new ArrayList<>(1)).add(price);
+        size++;
+    }
+
+    public void addAll(Collection<Price> prices) {
+        for (Price price : prices) {
+            add(price);
+        }
+    }
+
+    public boolean remove(Price price) {
+        Long begin = price.getBegin().getTime();
+        List<Price> prices = pricesByBegin.get(begin);
+        if (prices == null) {
+            return false;
+        }
+
+        for (Iterator<Price> iterator = prices.iterator(); iterator.hasNext(); ) {
+            if (iterator.next() == price) {
+                iterator.remove();
+                if (prices.isEmpty()) {
+                    pricesByBegin.remove(begin);
+                }
+                size--;
+                if (size == 0) {
+                    maxPeriodLength = 0;
+                    overlapping = false;
+                }
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns prices which periods overlap or touch the period from begin to end.
+     */
+    public List<Price> findIntersected(long begin, long end) {
+        ArrayList<Price> result = new ArrayList<>();
+
+        Long from = overlapping ? Long.valueOf(begin - maxPeriodLength) : pricesByBegin.lowerKey(begin);
+        for (List<Price> prices : pricesByBegin.subMap(from == null ? begin : from, true, end, true).values()) {
+            for (Price price : prices) {
+                if (price.getEnd().getTime() >= begin) {
+                    result.add(price);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Checks if a period overlaps any indexed price, touching prices do not overlap.
+     */
+    private boolean isOverlapped(long begin, long end) {
+        Map.Entry<Long, List<Price>> previous = pricesByBegin.floorEntry(begin);
+        if (previous != null) {
+            for (Price price : previous.getValue()) {
+                if (price.getEnd().getTime() > begin || previous.getKey() == begin) {
+                    return true;
+                }
+            }
+        }
+
+        Long next = pricesByBegin.higherKey(begin);
+        return next != null && next < end;
+    }
+
+    public List<Price> getPrices() {
+        ArrayList<Price> result = new ArrayList<>(size);
+
+        for (List<Price> prices : pricesByBegin.values()) {
+            result.addAll(prices);
+        }
+
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+}
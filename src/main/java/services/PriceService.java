@@ -1,25 +1,590 @@
 package services;
 
 import domain.Price;
+import domain.PriceChangeSet;
+import domain.PriceKey;
+import domain.PricePeriod;
+import domain.PriceTable;
+import domain.ProductCodeDictionary;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static services.PriceService.TimePeriodRelation.*;
 
 public class PriceService {
+    /**
+     * Order of price keys expected by {@link #mergePrices(Iterator, Iterator)}.
+     */
+    public static final Comparator<Price> KEY_ORDER = Comparator.comparing(Price::getProductCode)
+            .thenComparingInt(Price::getNumber)
+            .thenComparingInt(Price::getDepart);
+
+    private final PriceSweepMerger sweepMerger = new PriceSweepMerger();
+    private final ProductCodeDictionary dictionary;
+    private volatile PriceMergeListener mergeListener;
+
+    public PriceService() {
+        this(new ProductCodeDictionary());
+    }
+
+    public PriceService(ProductCodeDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    public ProductCodeDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public PriceMergeListener getMergeListener() {
+        return mergeListener;
+    }
+
+    /**
+     * Sets the listener of join statistics, null turns collecting statistics off.
+     */
+    public void setMergeListener(PriceMergeListener mergeListener) {
+        this.mergeListener = mergeListener;
+        sweepMerger.setListener(mergeListener);
+    }
+
+    public PriceKey getPriceKey(Price price) {
+        return PriceKey.of(price, dictionary);
+    }
+
+    public PricePeriod toPricePeriod(Price price) {
+        return PricePeriod.of(price, dictionary);
+    }
+
+    public Price toPrice(PricePeriod price) {
+        return price.toPrice(dictionary);
+    }
 
     public Collection<Price> joinPrices(Collection<Price> existedPrices, Collection<Price> newPrices) {
         if (existedPrices.isEmpty()) {
             return newPrices;
         }
 
+        long start = startBatch();
+        int inputCount = existedPrices.size() + newPrices.size();
+
         for (Price newPrice : newPrices) {
             existedPrices = joinPrice(existedPrices, newPrice);
         }
 
+        finishBatch(start, inputCount, existedPrices.size(), 0);
         return existedPrices;
     }
 
+    /**
+     * Joins prices like {@link #joinPrices(Collection, Collection)}, but prices are grouped
+     * by {@link PriceKey} first and only groups of keys with new prices are kept in a
+     * {@link PricePeriodIndex}, so every new price is joined only with overlapped or touched
+     * prices of its own key. Groups of other keys are added to the result as they are.
+     * <p>
+     * Unlike joinPrices a new price is merged only with prices of the same value which overlap
+     * or touch it, not with every price of the same value.
+     */
+    public Collection<Price> joinPricesByKey(Collection<Price> existedPrices, Collection<Price> newPrices) {
+        if (existedPrices.isEmpty()) {
+            return newPrices;
+        }
+
+        long start = startBatch();
+
+        Map<PriceKey, Collection<Price>> groupedExistedPrices = groupPricesByKey(existedPrices);
+        Map<PriceKey, Collection<Price>> groupedNewPrices = groupPricesByKey(newPrices);
+
+        ArrayList<Price> result = new ArrayList<>(existedPrices.size() + newPrices.size());
+        int largestKeyGroup = 0;
+        for (Map.Entry<PriceKey, Collection<Price>> entry : groupedExistedPrices.entrySet()) {
+            Collection<Price> keyNewPrices = groupedNewPrices.get(entry.getKey());
+            if (keyNewPrices == null) {
+                result.addAll(entry.getValue());
+                largestKeyGroup = Math.max(largestKeyGroup, entry.getValue().size());
+            } else {
+                largestKeyGroup = Math.max(largestKeyGroup, joinKeyPrices(entry.getValue(), keyNewPrices, result));
+            }
+        }
+        for (Map.Entry<PriceKey, Collection<Price>> entry : groupedNewPrices.entrySet()) {
+            if (!groupedExistedPrices.containsKey(entry.getKey())) {
+                largestKeyGroup = Math.max(largestKeyGroup, joinKeyPrices(Collections.<Price>emptyList(), entry.getValue(), result));
+            }
+        }
+
+        finishBatch(start, existedPrices.size() + newPrices.size(), result.size(), largestKeyGroup);
+        return result;
+    }
+
+    /**
+     * Joins new prices of a key with its existed prices in an index and adds joined prices to the result.
+     *
+     * @return count of joined prices.
+     */
+    private int joinKeyPrices(Collection<Price> existedPrices, Collection<Price> newPrices, Collection<Price> result) {
+        PricePeriodIndex index = new PricePeriodIndex(existedPrices);
+        for (Price newPrice : newPrices) {
+            joinPrice(index, newPrice);
+        }
+        result.addAll(index.getPrices());
+        return index.size();
+    }
+
+    /**
+     * Applies the whole batch of new prices in a single sweep per key.
+     * <p>
+     * At every point of time the latest price wins: new prices take precedence over existed ones
+     * and later new prices over earlier ones. Prices with the same value are merged with a new
+     * price only if they overlap or touch it. Existed prices are never changed, prices of keys
+     * without new prices are returned as is, changed prices are returned as new objects keeping
+     * the id of the existed price for its earliest piece.
+     * <p>
+     * The result differs from {@link #joinPrices(Collection, Collection)} in three cases:
+     * <ul>
+     * <li>joinPrices merges a new price with every price of the same value, even one it does
+     * not touch.</li>
+     * <li>joinPrices drops the whole existed price when both share one bound (MATCH), while
+     * here the part not covered by the new price is kept.</li>
+     * <li>A new price fully covered by a later new price leaves no piece in the sweep, so it does
+     * not merge the existed prices of its value it touched, while joinPrices has merged them
+     * before the later price is applied.</li>
+     * </ul>
+     */
+    public Collection<Price> mergePrices(Collection<Price> existedPrices, Collection<Price> newPrices) {
+        long start = startBatch();
+        return mergeKeyGroups(start, groupKeyPrices(existedPrices, newPrices, this::getPriceKey), this::mergeKeyPrices);
+    }
+
+    /**
+     * Same as {@link #mergePrices(Collection, Collection)} for {@link PricePeriod}, no dates
+     * are allocated while merging.
+     */
+    public Collection<PricePeriod> mergePricePeriods(Collection<PricePeriod> existedPrices, Collection<PricePeriod> newPrices) {
+        long start = startBatch();
+        return mergeKeyGroups(start, groupKeyPrices(existedPrices, newPrices, PriceKey::of), this::mergeKeyPricePeriods);
+    }
+
+    /**
+     * Same as {@link #mergePrices(Collection, Collection)}, but keys are merged in parallel
+     * in the common pool.
+     */
+    public Collection<Price> mergePricesParallel(Collection<Price> existedPrices, Collection<Price> newPrices) {
+        return mergePricesParallel(existedPrices, newPrices, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Same as {@link #mergePrices(Collection, Collection)}, but keys are merged in parallel
+     * in the given pool. The result is in the same order as the sequential one.
+     */
+    public Collection<Price> mergePricesParallel(Collection<Price> existedPrices, Collection<Price> newPrices, ForkJoinPool pool) {
+        long start = startBatch();
+        return mergeKeyGroupsParallel(start, groupKeyPrices(existedPrices, newPrices, this::getPriceKey), this::mergeKeyPrices, pool);
+    }
+
+    /**
+     * Same as {@link #mergePricePeriods(Collection, Collection)}, but keys are merged in parallel
+     * in the given pool.
+     */
+    public Collection<PricePeriod> mergePricePeriodsParallel(Collection<PricePeriod> existedPrices, Collection<PricePeriod> newPrices, ForkJoinPool pool) {
+        long start = startBatch();
+        return mergeKeyGroupsParallel(start, groupKeyPrices(existedPrices, newPrices, PriceKey::of), this::mergeKeyPricePeriods, pool);
+    }
+
+    /**
+     * Rewrites prices of every key into the minimal set of non-overlapping periods ordered by
+     * begin, adjacent periods with the same value are coalesced. Where prices overlap the later
+     * one wins, as if they were joined one by one. Coalesced prices keep the id of the earliest one.
+     */
+    public Collection<Price> compactPrices(Collection<Price> prices) {
+        ArrayList<Price> result = new ArrayList<>(prices.size());
+        for (Collection<Price> keyPrices : groupPricesByKey(prices).values()) {
+            mergeKeyPrices(keyPrices, Collections.<Price>emptyList(), true, (source, piece, firstPiece) -> result.add(piece));
+        }
+        return result;
+    }
+
+    /**
+     * Same as {@link #compactPrices(Collection)} for price periods of a single key.
+     */
+    public List<PricePeriod> compactKeyPricePeriods(Collection<PricePeriod> prices) {
+        return mergeKeyPricePeriods(prices, Collections.<PricePeriod>emptyList(), true);
+    }
+
+    private <T> Collection<T> mergeKeyGroups(long start, List<KeyPrices<T>> groupedPrices, BiFunction<Collection<T>, Collection<T>, List<T>> merge) {
+        ArrayList<T> result = new ArrayList<>();
+        for (KeyPrices<T> keyPrices : groupedPrices) {
+            result.addAll(keyPrices.merge(merge));
+        }
+
+        finishBatch(start, groupedPrices, result.size());
+        return result;
+    }
+
+    private <T> Collection<T> mergeKeyGroupsParallel(long start, List<KeyPrices<T>> groupedPrices, BiFunction<Collection<T>, Collection<T>, List<T>> merge, ForkJoinPool pool) {
+        List<Collection<T>> mergedPrices = pool.submit(() -> groupedPrices.parallelStream()
+                .map(keyPrices -> keyPrices.merge(merge))
+                .collect(Collectors.toList()))
+                .join();
+
+        ArrayList<T> result = new ArrayList<>();
+        for (Collection<T> keyPrices : mergedPrices) {
+            result.addAll(keyPrices);
+        }
+
+        finishBatch(start, groupedPrices, result.size());
+        return result;
+    }
+
+    private long startBatch() {
+        return mergeListener == null ? 0 : System.nanoTime();
+    }
+
+    private void finishBatch(long start, int inputCount, int outputCount, int largestKeyGroup) {
+        PriceMergeListener listener = mergeListener;
+        if (listener != null && start != 0) {
+            listener.onBatch(inputCount, outputCount, largestKeyGroup, System.nanoTime() - start);
+        }
+    }
+
+    private <T> void finishBatch(long start, List<KeyPrices<T>> groupedPrices, int outputCount) {
+        if (mergeListener == null || start == 0) {
+            return;
+        }
+
+        int inputCount = 0;
+        int largestKeyGroup = 0;
+        for (KeyPrices<T> keyPrices : groupedPrices) {
+            int count = keyPrices.size();
+            inputCount += count;
+            largestKeyGroup = Math.max(largestKeyGroup, count);
+        }
+        finishBatch(start, inputCount, outputCount, largestKeyGroup);
+    }
+
+    private <T> List<KeyPrices<T>> groupKeyPrices(Collection<T> existedPrices, Collection<T> newPrices, Function<T, PriceKey> keyFunction) {
+        Map<PriceKey, Collection<T>> groupedExistedPrices = groupByKey(existedPrices, keyFunction);
+        Map<PriceKey, Collection<T>> groupedNewPrices = groupByKey(newPrices, keyFunction);
+
+        ArrayList<KeyPrices<T>> result = new ArrayList<>(groupedExistedPrices.size() + groupedNewPrices.size());
+        for (Map.Entry<PriceKey, Collection<T>> entry : groupedExistedPrices.entrySet()) {
+            result.add(new KeyPrices<>(entry.getValue(), groupedNewPrices.get(entry.getKey())));
+        }
+        for (Map.Entry<PriceKey, Collection<T>> entry : groupedNewPrices.entrySet()) {
+            if (!groupedExistedPrices.containsKey(entry.getKey())) {
+                result.add(new KeyPrices<>(Collections.<T>emptyList(), entry.getValue()));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Applies new prices to existed ones the same way {@link #mergePrices(Collection, Collection)}
+     * does, but returns only changes of existed prices instead of the whole collection.
+     */
+    public PriceChangeSet getPricesChanges(Collection<Price> existedPrices, Collection<Price> newPrices) {
+        long start = startBatch();
+        PriceChangeSet result = new PriceChangeSet();
+
+        List<KeyPrices<Price>> groupedPrices = groupKeyPrices(existedPrices, newPrices, this::getPriceKey);
+        for (KeyPrices<Price> keyPrices : groupedPrices) {
+            if (keyPrices.newPrices == null) {
+                continue;
+            }
+
+            List<Price> keyExistedPrices = new ArrayList<>(keyPrices.existedPrices);
+            int[] pieces = new int[keyExistedPrices.size()];
+            Price[] firstPieces = new Price[keyExistedPrices.size()];
+
+            mergeKeyPrices(keyExistedPrices, keyPrices.newPrices, false, (source, piece, firstPiece) -> {
+                if (source >= pieces.length) {
+                    result.getInserted().add(piece);
+                } else {
+                    pieces[source]++;
+                    if (!firstPiece) {
+                        result.getInserted().add(piece);
+                    } else if (piece != keyExistedPrices.get(source)) {
+                        firstPieces[source] = piece;
+                    }
+                }
+            });
+
+            for (int i = 0; i < pieces.length; i++) {
+                if (pieces[i] == 0) {
+                    result.getDeleted().add(keyExistedPrices.get(i));
+                } else if (pieces[i] > 1) {
+                    result.getSplit().add(firstPieces[i]);
+                } else if (firstPieces[i] != null) {
+                    result.getUpdated().add(firstPieces[i]);
+                }
+            }
+        }
+
+        finishBatch(start, groupedPrices, result.getUpdated().size() + result.getSplit().size() + result.getInserted().size());
+        return result;
+    }
+
+    /**
+     * Merges prices of a single key, result is ordered by period begin.
+     */
+    public List<Price> mergeKeyPrices(Collection<Price> existedPrices, Collection<Price> newPrices) {
+        ArrayList<Price> result = new ArrayList<>(existedPrices.size() + newPrices.size());
+        mergeKeyPrices(existedPrices, newPrices, false, (source, piece, firstPiece) -> result.add(piece));
+        return result;
+    }
+
+    private void mergeKeyPrices(Collection<Price> existedPrices, Collection<Price> newPrices, boolean coalesceExisted,
+                                PricePieceConsumer consumer) {
+        int count = existedPrices.size() + newPrices.size();
+        Price[] prices = new Price[count];
+        long[] begins = new long[count];
+        long[] ends = new long[count];
+        long[] values = new long[count];
+
+        int i = 0;
+        for (Price price : existedPrices) {
+            prices[i++] = price;
+        }
+        for (Price price : newPrices) {
+            prices[i++] = price;
+        }
+        for (i = 0; i < count; i++) {
+            begins[i] = prices[i].getBegin().getTime();
+            ends[i] = prices[i].getEnd().getTime();
+            values[i] = prices[i].getValue();
+        }
+
+        int existedCount = existedPrices.size();
+        sweepMerger.merge(begins, ends, values, existedCount, count, coalesceExisted, (source, begin, end, firstPiece) -> {
+            Price price = prices[source];
+            if (firstPiece && source < existedCount && begin == begins[source] && end == ends[source]) {
+                consumer.accept(source, price, true);
+            } else {
+                Price piece = new Price(price.getProductCode(), price.getNumber(), price.getDepart(),
+                        new Date(begin), new Date(end), price.getValue());
+                if (firstPiece) {
+                    piece.setId(price.getId());
+                }
+                consumer.accept(source, piece, firstPiece);
+            }
+        });
+    }
+
+    /**
+     * Merges price periods of a single key, result is ordered by period begin.
+     */
+    public List<PricePeriod> mergeKeyPricePeriods(Collection<PricePeriod> existedPrices, Collection<PricePeriod> newPrices) {
+        return mergeKeyPricePeriods(existedPrices, newPrices, false);
+    }
+
+    private List<PricePeriod> mergeKeyPricePeriods(Collection<PricePeriod> existedPrices, Collection<PricePeriod> newPrices,
+                                                   boolean coalesceExisted) {
+        int count = existedPrices.size() + newPrices.size();
+        PricePeriod[] prices = new PricePeriod[count];
+        long[] begins = new long[count];
+        long[] ends = new long[count];
+        long[] values = new long[count];
+
+        int i = 0;
+        for (PricePeriod price : existedPrices) {
+            prices[i++] = price;
+        }
+        for (PricePeriod price : newPrices) {
+            prices[i++] = price;
+        }
+        for (i = 0; i < count; i++) {
+            begins[i] = prices[i].getBegin();
+            ends[i] = prices[i].getEnd();
+            values[i] = prices[i].getValue();
+        }
+
+        ArrayList<PricePeriod> result = new ArrayList<>(count);
+        sweepMerger.merge(begins, ends, values, existedPrices.size(), count, coalesceExisted, (source, begin, end, firstPiece) -> {
+            PricePeriod price = prices[source];
+            if (firstPiece && begin == price.getBegin() && end == price.getEnd()) {
+                result.add(price);
+            } else {
+                result.add(price.withPeriod(firstPiece ? price.getId() : 0, begin, end));
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Same as {@link #mergePrices(Collection, Collection)} for prices read from iterators
+     * ordered by {@link #KEY_ORDER}, existed prices of a key are expected to be ordered by begin.
+     * <p>
+     * Prices are merged lazily one key at a time, so only the prices of a single key are held
+     * in memory. The result is ordered by {@link #KEY_ORDER} and begin. Reading prices out of
+     * key order fails with {@link IllegalStateException}.
+     */
+    public Iterator<Price> mergePrices(Iterator<Price> existedPrices, Iterator<Price> newPrices) {
+        return new PriceStreamMerger(this, existedPrices, newPrices);
+    }
+
+    /**
+     * Same as {@link #mergePrices(Iterator, Iterator)} for streams.
+     */
+    public Stream<Price> mergePrices(Stream<Price> existedPrices, Stream<Price> newPrices) {
+        Iterator<Price> mergedPrices = mergePrices(existedPrices.iterator(), newPrices.iterator());
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(mergedPrices, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    existedPrices.close();
+                    newPrices.close();
+                });
+    }
+
+    /**
+     * Same as {@link #mergePricePeriods(Collection, Collection)} for existed prices kept in the store.
+     * <p>
+     * Only keys of new prices are read from the store, merged prices of a key are written back
+     * if they differ from the stored ones. Every key is merged by {@link PriceStore#update}, so
+     * concurrent merges of the same key do not lose each other's prices. The store has to share
+     * the dictionary of the service.
+     *
+     * @return keys which prices have been changed.
+     */
+    public Set<PriceKey> mergePrices(PriceStore store, Collection<PricePeriod> newPrices) throws IOException {
+        if (store.getDictionary() != dictionary) {
+            throw new IllegalArgumentException("Price store has to share the product code dictionary of the service");
+        }
+
+        long start = startBatch();
+        int[] counts = new int[3];
+
+        Set<PriceKey> result = new LinkedHashSet<>();
+        for (Map.Entry<PriceKey, Collection<PricePeriod>> entry : groupPricePeriodsByKey(newPrices).entrySet()) {
+            boolean changed = store.update(entry.getKey(), existedPrices -> {
+                List<PricePeriod> mergedPrices = mergeKeyPricePeriods(existedPrices, entry.getValue());
+                int keyGroup = existedPrices.size() + entry.getValue().size();
+                counts[0] += keyGroup;
+                counts[1] += mergedPrices.size();
+                counts[2] = Math.max(counts[2], keyGroup);
+                return mergedPrices;
+            });
+            if (changed) {
+                result.add(entry.getKey());
+            }
+        }
+
+        finishBatch(start, counts[0], counts[1], counts[2]);
+        return result;
+    }
+
+    /**
+     * Same as {@link #compactPrices(Collection)} for the given keys of the store, compacted
+     * prices of a key are written back if they differ from the stored ones.
+     *
+     * @return keys which prices have been changed.
+     */
+    public Set<PriceKey> compactPrices(PriceStore store, Collection<PriceKey> keys) throws IOException {
+        Set<PriceKey> result = new LinkedHashSet<>();
+        for (PriceKey key : keys) {
+            if (store.update(key, this::compactKeyPricePeriods)) {
+                result.add(key);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Same as {@link #mergePrices(Collection, Collection)} for prices stored in tables,
+     * rows are merged without creating objects per row.
+     * <p>
+     * Both tables have to share the dictionary. Rows are grouped by key with a stable sort, so
+     * rows of a key keep their precedence. The result is grouped by key, ordered by product code
+     * id in the dictionary rather than by code, then by number and depart, so grouping a table
+     * returned by this method again is linear. Rows of keys with new rows are ordered by period
+     * begin, rows of other keys keep their order in the existed table.
+     */
+    public PriceTable mergePrices(PriceTable existedPrices, PriceTable newPrices) {
+        if (existedPrices.getDictionary() != newPrices.getDictionary()) {
+            throw new IllegalArgumentException("Price tables have to share the product code dictionary");
+        }
+
+        long start = startBatch();
+        int largestKeyGroup = 0;
+
+        int[] existedRows = IndexSort.range(existedPrices.size());
+        IndexSort.sort(existedRows, existedRows.length, (i, j) -> compareKeys(existedPrices, i, existedPrices, j));
+        int[] newRows = IndexSort.range(newPrices.size());
+        IndexSort.sort(newRows, newRows.length, (i, j) -> compareKeys(newPrices, i, newPrices, j));
+
+        PriceTable result = new PriceTable(existedPrices.getDictionary(), existedPrices.size() + newPrices.size());
+        TableMerge merge = new TableMerge(existedPrices, newPrices, result);
+
+        int existedIndex = 0;
+        int newIndex = 0;
+        while (existedIndex < existedRows.length || newIndex < newRows.length) {
+            int comparison;
+            if (existedIndex == existedRows.length) {
+                comparison = 1;
+            } else if (newIndex == newRows.length) {
+                comparison = -1;
+            } else {
+                comparison = compareKeys(existedPrices, existedRows[existedIndex], newPrices, newRows[newIndex]);
+            }
+
+            if (comparison < 0) {
+                result.add(existedPrices, existedRows[existedIndex++]);
+                continue;
+            }
+
+            merge.clear();
+            if (comparison == 0) {
+                int key = existedRows[existedIndex];
+                while (existedIndex < existedRows.length && compareKeys(existedPrices, existedRows[existedIndex], existedPrices, key) == 0) {
+                    merge.addExisted(existedRows[existedIndex++]);
+                }
+            }
+            int key = newRows[newIndex];
+            while (newIndex < newRows.length && compareKeys(newPrices, newRows[newIndex], newPrices, key) == 0) {
+                merge.addNew(newRows[newIndex++]);
+            }
+            merge.merge(sweepMerger);
+            largestKeyGroup = Math.max(largestKeyGroup, merge.count);
+        }
+
+        finishBatch(start, existedPrices.size() + newPrices.size(), result.size(), largestKeyGroup);
+        return result;
+    }
+
+    private static int compareKeys(PriceTable table1, int row1, PriceTable table2, int row2) {
+        int result = Integer.compare(table1.getProductCodeId(row1), table2.getProductCodeId(row2));
+        if (result == 0) {
+            result = Integer.compare(table1.getNumber(row1), table2.getNumber(row2));
+        }
+        if (result == 0) {
+            result = Integer.compare(table1.getDepart(row1), table2.getDepart(row2));
+        }
+        return result;
+    }
+
+    public Map<PriceKey, Collection<Price>> groupPricesByKey(Collection<Price> prices) {
+        return groupByKey(prices, this::getPriceKey);
+    }
+
+    public Map<PriceKey, Collection<PricePeriod>> groupPricePeriodsByKey(Collection<PricePeriod> prices) {
+        return groupByKey(prices, PriceKey::of);
+    }
+
+    private <T> Map<PriceKey, Collection<T>> groupByKey(Collection<T> prices, Function<T, PriceKey> keyFunction) {
+        Map<PriceKey, Collection<T>> result = new LinkedHashMap<>();
+
+        for (T price : prices) {
+            result.computeIfAbsent(keyFunction.apply(price), key -> new ArrayList<>()).add(price);
+        }
+
+        return result;
+    }
+
     public Collection<Price> joinPrice(Collection<Price> existedPrices, Price newPrice) {
         ArrayList<Price> result = new ArrayList<>();
 
@@ -41,10 +606,45 @@ public class PriceService {
         return result;
     }
 
+    /**
+     * Joins new price with prices of the same key kept in the index.
+     * <p>
+     * Unlike {@link #joinPrice(Collection, Price)} prices with the same value are merged
+     * only if their periods overlap or touch the new price period.
+     */
+    public void joinPrice(PricePeriodIndex index, Price newPrice) {
+        Price copyNewPrice = copyPrice(newPrice);
+
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            for (Price existedPrice : index.findIntersected(copyNewPrice.getBegin().getTime(), copyNewPrice.getEnd().getTime())) {
+                if (copyNewPrice.getValue() == existedPrice.getValue()) {
+                    index.remove(existedPrice);
+                    copyNewPrice = addPricesPeriods(copyNewPrice, existedPrice);
+                    merged = true;
+                }
+            }
+        }
+
+        for (Price existedPrice : index.findIntersected(copyNewPrice.getBegin().getTime(), copyNewPrice.getEnd().getTime())) {
+            if (isPricesPeriodsIntersected(existedPrice, copyNewPrice)) {
+                index.remove(existedPrice);
+                index.addAll(getPricesPeriodDifference(existedPrice, copyNewPrice));
+            }
+        }
+
+        index.add(copyNewPrice);
+    }
+
+    /**
+     * Checks if prices have the same key. {@link Price} carries no product code id, so int fields
+     * are compared first and the product code only if they match.
+     */
     public boolean isPricesEquals(Price p1, Price p2) {
-        return p1.getProductCode().equals(p2.getProductCode())
-                && p1.getNumber() == p2.getNumber()
-                && p1.getDepart() == p2.getDepart();
+        return p1.getNumber() == p2.getNumber()
+                && p1.getDepart() == p2.getDepart()
+                && p1.getProductCode().equals(p2.getProductCode());
     }
 
     public List<Price> getPricesPeriodDifference(Price existedPrice, Price newPrice) {
@@ -53,7 +653,13 @@ public class PriceService {
         if (!isPricesPeriodsIntersected(existedPrice, newPrice)) {
             Collections.addAll(result, existedPrice);
         } else {
-            switch (getPricesTimePeriodRelations(existedPrice, newPrice)) {
+            TimePeriodRelation relation = getPricesTimePeriodRelations(existedPrice, newPrice);
+            PriceMergeListener listener = mergeListener;
+            if (listener != null) {
+                listener.onRelation(relation);
+            }
+
+            switch (relation) {
                 case FORWARD_OFFSET:
                     existedPrice.setEnd(new Date(newPrice.getBegin().getTime()));
                     Collections.addAll(result, existedPrice);
@@ -92,6 +698,11 @@ public class PriceService {
         existedPrice.setBegin(new Date(newBeginDate));
         existedPrice.setEnd(new Date(newEndDate));
 
+        PriceMergeListener listener = mergeListener;
+        if (listener != null) {
+            listener.onPricesMerged(1);
+        }
+
         return existedPrice;
     }
 
@@ -118,6 +729,93 @@ public class PriceService {
                 source.getValue());
     }
 
+    private interface PricePieceConsumer {
+        /**
+         * @param piece existed price itself if it is not changed, otherwise a new price.
+         */
+        void accept(int source, Price piece, boolean firstPiece);
+    }
+
+    /**
+     * Rows of a single key of two tables copied to reusable buffers for the sweep merge.
+     */
+    private static class TableMerge implements PriceSweepMerger.PeriodConsumer {
+        private final PriceTable existedPrices;
+        private final PriceTable newPrices;
+        private final PriceTable result;
+        private int[] rows = new int[16];
+        private long[] begins = new long[16];
+        private long[] ends = new long[16];
+        private long[] values = new long[16];
+        private int existedCount;
+        private int count;
+
+        private TableMerge(PriceTable existedPrices, PriceTable newPrices, PriceTable result) {
+            this.existedPrices = existedPrices;
+            this.newPrices = newPrices;
+            this.result = result;
+        }
+
+        private void clear() {
+            existedCount = 0;
+            count = 0;
+        }
+
+        private void addExisted(int row) {
+            add(existedPrices, row);
+            existedCount++;
+        }
+
+        private void addNew(int row) {
+            add(newPrices, row);
+        }
+
+        private void add(PriceTable table, int row) {
+            if (count == rows.length) {
+                int capacity = count * 2;
+                rows = Arrays.copyOf(rows, capacity);
+                begins = Arrays.copyOf(begins, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            rows[count] = row;
+            begins[count] = table.getBegin(row);
+            ends[count] = table.getEnd(row);
+            values[count] = table.getValue(row);
+            count++;
+        }
+
+        private void merge(PriceSweepMerger sweepMerger) {
+            sweepMerger.merge(begins, ends, values, existedCount, count, this);
+        }
+
+        @Override
+        public void accept(int source, long begin, long end, boolean firstPiece) {
+            PriceTable table = source < existedCount ? existedPrices : newPrices;
+            int row = rows[source];
+            result.add(firstPiece ? table.getId(row) : 0, table.getProductCodeId(row), table.getNumber(row),
+                    table.getDepart(row), begin, end, table.getValue(row));
+        }
+    }
+
+    private static class KeyPrices<T> {
+        private final Collection<T> existedPrices;
+        private final Collection<T> newPrices;
+
+        private KeyPrices(Collection<T> existedPrices, Collection<T> newPrices) {
+            this.existedPrices = existedPrices;
+            this.newPrices = newPrices;
+        }
+
+        private int size() {
+            return existedPrices.size() + (newPrices == null ? 0 : newPrices.size());
+        }
+
+        private Collection<T> merge(BiFunction<Collection<T>, Collection<T>, List<T>> merge) {
+            return newPrices == null ? existedPrices : merge.apply(existedPrices, newPrices);
+        }
+    }
+
     /**
      * Represents relations between prices periods.
      * <p>
@@ -130,7 +828,7 @@ public class PriceService {
      * @ABSORPTION - \ / / \
      * @MATCH - X X
      */
-    enum TimePeriodRelation {
+    public enum TimePeriodRelation {
         FORWARD_OFFSET,
         BACKWARD_OFFSET,
         OCCURRENCE,
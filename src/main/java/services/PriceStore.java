@@ -0,0 +1,337 @@
+package services;
+
+import domain.PriceKey;
+import domain.PricePeriod;
+import domain.ProductCodeDictionary;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * File store of price periods grouped by key.
+ * <p>
+ * Prices of a key are kept as a segment of fixed width records in the data file. Writing
+ * prices of a key appends a new segment and points the key to it, the old segment stays
+ * in the file as garbage until {@link #compact()}. The key to segment index and product codes
+ * are kept in separate files written by {@link #flush()}, so a store is opened without reading
+ * the data file and segments appended after the last flush are just ignored.
+ * <p>
+ * Data files are numbered by generation and the index names the generation it refers to.
+ * Compaction writes the next generation and publishes it by writing the index, so a crash at
+ * any point leaves the index consistent with its data file.
+ * <p>
+ * Methods of the store are synchronized, listeners added by {@link #addWriteListener(Consumer)}
+ * are notified about every written key.
+ */
+public class PriceStore implements Closeable {
+    static final int RECORD_SIZE = 8 + 4 + 4 + 4 + 8 + 8 + 8;
+
+    private static final String DATA_FILE_PREFIX = "prices.";
+    private static final String DATA_FILE_SUFFIX = ".dat";
+    private static final String INDEX_FILE = "index.dat";
+    private static final String CODES_FILE = "codes.dat";
+
+    private final Path directory;
+    private final ProductCodeDictionary dictionary;
+    private final Map<PriceKey, Segment> segments;
+    private final List<Consumer<PriceKey>> writeListeners = new CopyOnWriteArrayList<>();
+    private ByteBuffer readBuffer = ByteBuffer.allocate(64 * RECORD_SIZE);
+    private FileChannel channel;
+    private long generation;
+    private int storedCodesCount;
+    private long garbageSize;
+
+    private PriceStore(Path directory, ProductCodeDictionary dictionary, Map<PriceKey, Segment> segments,
+                       FileChannel channel, long generation, long garbageSize) {
+        this.directory = directory;
+        this.dictionary = dictionary;
+        this.segments = segments;
+        this.channel = channel;
+        this.generation = generation;
+        this.storedCodesCount = dictionary.size();
+        this.garbageSize = garbageSize;
+    }
+
+    public static PriceStore open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+
+        ProductCodeDictionary dictionary = new ProductCodeDictionary();
+        Path codesFile = directory.resolve(CODES_FILE);
+        if (Files.exists(codesFile)) {
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(codesFile)))) {
+                int count = input.readInt();
+                for (int i = 0; i < count; i++) {
+                    dictionary.getId(input.readUTF());
+                }
+            }
+        }
+
+        Map<PriceKey, Segment> segments = new HashMap<>();
+        long generation = 0;
+        long liveSize = 0;
+        Path indexFile = directory.resolve(INDEX_FILE);
+        if (Files.exists(indexFile)) {
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+                generation = input.readLong();
+                int count = input.readInt();
+                for (int i = 0; i < count; i++) {
+                    PriceKey key = new PriceKey(input.readInt(), input.readInt(), input.readInt());
+                    Segment segment = new Segment(input.readLong(), input.readInt());
+                    segments.put(key, segment);
+                    liveSize += segment.size();
+                }
+            }
+        }
+
+        deleteDataFiles(directory, generation);
+        FileChannel channel = FileChannel.open(getDataFile(directory, generation),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new PriceStore(directory, dictionary, segments, channel, generation, channel.size() - liveSize);
+    }
+
+    public ProductCodeDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public synchronized Set<PriceKey> getKeys() {
+        return Collections.unmodifiableSet(new HashSet<>(segments.keySet()));
+    }
+
+    public void addWriteListener(Consumer<PriceKey> listener) {
+        writeListeners.add(listener);
+    }
+
+    public void removeWriteListener(Consumer<PriceKey> listener) {
+        writeListeners.remove(listener);
+    }
+
+    /**
+     * Size of segments which are not referenced by the index any more.
+     */
+    public synchronized long getGarbageSize() {
+        return garbageSize;
+    }
+
+    public synchronized List<PricePeriod> read(PriceKey key) throws IOException {
+        Segment segment = segments.get(key);
+        if (segment == null) {
+            return Collections.emptyList();
+        }
+
+        if (readBuffer.capacity() < segment.size()) {
+            readBuffer = ByteBuffer.allocate((int) segment.size());
+        }
+        ByteBuffer buffer = readBuffer;
+        buffer.clear().limit((int) segment.size());
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, segment.offset + buffer.position()) < 0) {
+                throw new EOFException("Segment of " + key + " is out of the data file");
+            }
+        }
+        buffer.flip();
+
+        ArrayList<PricePeriod> result = new ArrayList<>(segment.count);
+        for (int i = 0; i < segment.count; i++) {
+            result.add(new PricePeriod(buffer.getLong(), buffer.getInt(), buffer.getInt(), buffer.getInt(),
+                    buffer.getLong(), buffer.getLong(), buffer.getLong()));
+        }
+        return result;
+    }
+
+    /**
+     * Replaces prices of the key, writing no prices removes the key.
+     */
+    public synchronized void write(PriceKey key, List<PricePeriod> prices) throws IOException {
+        Segment segment = null;
+        if (!prices.isEmpty()) {
+            ByteBuffer buffer = ByteBuffer.allocate(prices.size() * RECORD_SIZE);
+            for (PricePeriod price : prices) {
+                buffer.putLong(price.getId())
+                        .putInt(price.getProductCodeId())
+                        .putInt(price.getNumber())
+                        .putInt(price.getDepart())
+                        .putLong(price.getBegin())
+                        .putLong(price.getEnd())
+                        .putLong(price.getValue());
+            }
+            buffer.flip();
+
+            long offset = channel.size();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, offset + buffer.position());
+            }
+            segment = new Segment(offset, prices.size());
+        }
+
+        Segment oldSegment = segment == null ? segments.remove(key) : segments.put(key, segment);
+        if (oldSegment != null) {
+            garbageSize += oldSegment.size();
+        }
+
+        for (Consumer<PriceKey> listener : writeListeners) {
+            listener.accept(key);
+        }
+    }
+
+    /**
+     * Replaces prices of the key with the prices returned by the function for the stored ones,
+     * holding the lock of the store, so the key is not written by others in between. Nothing is
+     * written if the function returns equal prices.
+     *
+     * @return true if prices of the key have been changed.
+     */
+    public synchronized boolean update(PriceKey key, UnaryOperator<List<PricePeriod>> function) throws IOException {
+        List<PricePeriod> prices = read(key);
+        List<PricePeriod> updatedPrices = function.apply(prices);
+        if (updatedPrices.equals(prices)) {
+            return false;
+        }
+        write(key, updatedPrices);
+        return true;
+    }
+
+    /**
+     * Writes data file to disk and stores the index and new product codes.
+     */
+    public synchronized void flush() throws IOException {
+        channel.force(false);
+        writeCodes();
+        writeIndex(generation, segments);
+    }
+
+    /**
+     * Rewrites the data file keeping only segments referenced by the index.
+     */
+    public synchronized void compact() throws IOException {
+        List<Map.Entry<PriceKey, Segment>> entries = new ArrayList<>(segments.entrySet());
+        entries.sort(Comparator.comparingLong(entry -> entry.getValue().offset));
+
+        long compactedGeneration = generation + 1;
+        Path compactedFile = getDataFile(directory, compactedGeneration);
+        Map<PriceKey, Segment> compactedSegments = new HashMap<>();
+        FileChannel compactedChannel = FileChannel.open(compactedFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long offset = 0;
+            for (Map.Entry<PriceKey, Segment> entry : entries) {
+                Segment segment = entry.getValue();
+                long transferred = 0;
+                while (transferred < segment.size()) {
+                    transferred += channel.transferTo(segment.offset + transferred, segment.size() - transferred, compactedChannel);
+                }
+                compactedSegments.put(entry.getKey(), new Segment(offset, segment.count));
+                offset += segment.size();
+            }
+            compactedChannel.force(false);
+
+            writeCodes();
+            writeIndex(compactedGeneration, compactedSegments);
+        } catch (IOException | RuntimeException e) {
+            compactedChannel.close();
+            Files.deleteIfExists(compactedFile);
+            throw e;
+        }
+
+        FileChannel oldChannel = channel;
+        Path oldFile = getDataFile(directory, generation);
+        channel = compactedChannel;
+        generation = compactedGeneration;
+        segments.clear();
+        segments.putAll(compactedSegments);
+        garbageSize = 0;
+
+        oldChannel.close();
+        Files.deleteIfExists(oldFile);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeCodes() throws IOException {
+        int codesCount = dictionary.size();
+        if (codesCount > storedCodesCount) {
+            writeFile(CODES_FILE, output -> {
+                output.writeInt(codesCount);
+                for (int id = 0; id < codesCount; id++) {
+                    output.writeUTF(dictionary.getCode(id));
+                }
+            });
+            storedCodesCount = codesCount;
+        }
+    }
+
+    private void writeIndex(long generation, Map<PriceKey, Segment> segments) throws IOException {
+        writeFile(INDEX_FILE, output -> {
+            output.writeLong(generation);
+            output.writeInt(segments.size());
+            for (Map.Entry<PriceKey, Segment> entry : segments.entrySet()) {
+                output.writeInt(entry.getKey().getProductCodeId());
+                output.writeInt(entry.getKey().getNumber());
+                output.writeInt(entry.getKey().getDepart());
+                output.writeLong(entry.getValue().offset);
+                output.writeInt(entry.getValue().count);
+            }
+        });
+    }
+
+    private void writeFile(String name, FileContent content) throws IOException {
+        Path file = directory.resolve(name);
+        Path temporaryFile = directory.resolve(name + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+            content.write(output);
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Path getDataFile(Path directory, long generation) {
+        return directory.resolve(DATA_FILE_PREFIX + generation + DATA_FILE_SUFFIX);
+    }
+
+    /**
+     * Deletes data files of other generations left by an interrupted compaction.
+     */
+    private static void deleteDataFiles(Path directory, long generation) throws IOException {
+        String dataFile = getDataFile(directory, generation).getFileName().toString();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, DATA_FILE_PREFIX + "*" + DATA_FILE_SUFFIX)) {
+            for (Path file : files) {
+                if (!file.getFileName().toString().equals(dataFile)) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private interface FileContent {
+        void write(DataOutputStream output) throws IOException;
+    }
+
+    private static class Segment {
+        private final long offset;
+        private final int count;
+
+        private Segment(long offset, int count) {
+            this.offset = offset;
+            this.count = count;
+        }
+
+        private long size() {
+            return (long) count * RECORD_SIZE;
+        }
+    }
+}
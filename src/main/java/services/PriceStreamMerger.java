@@ -0,0 +1,90 @@
+package services;
+
+import domain.Price;
+
+import java.util.*;
+
+/**
+ * Merges prices read from iterators ordered by key, one key group at a time.
+ * <p>
+ * Only prices of the current key are held in memory. New prices of a key are applied
+ * in the order they are read.
+ */
+class PriceStreamMerger implements Iterator<Price> {
+    private final PriceService priceService;
+    private final PeekingIterator existedPrices;
+    private final PeekingIterator newPrices;
+    private Iterator<Price> keyPrices = Collections.emptyIterator();
+
+    PriceStreamMerger(PriceService priceService, Iterator<Price> existedPrices, Iterator<Price> newPrices) {
+        this.priceService = priceService;
+        this.existedPrices = new PeekingIterator(existedPrices);
+        this.newPrices = new PeekingIterator(newPrices);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!keyPrices.hasNext() && (existedPrices.hasNext() || newPrices.hasNext())) {
+            keyPrices = mergeNextKey();
+        }
+        return keyPrices.hasNext();
+    }
+
+    @Override
+    public Price next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return keyPrices.next();
+    }
+
+    private Iterator<Price> mergeNextKey() {
+        Price key;
+        if (!existedPrices.hasNext()) {
+            key = newPrices.peek();
+        } else if (!newPrices.hasNext()) {
+            key = existedPrices.peek();
+        } else if (PriceService.KEY_ORDER.compare(existedPrices.peek(), newPrices.peek()) <= 0) {
+            key = existedPrices.peek();
+        } else {
+            key = newPrices.peek();
+        }
+
+        List<Price> keyExistedPrices = existedPrices.nextGroup(key);
+        List<Price> keyNewPrices = newPrices.nextGroup(key);
+        if (keyNewPrices.isEmpty()) {
+            return keyExistedPrices.iterator();
+        }
+        return priceService.mergeKeyPrices(keyExistedPrices, keyNewPrices).iterator();
+    }
+
+    private static class PeekingIterator {
+        private final Iterator<Price> iterator;
+        private Price next;
+
+        private PeekingIterator(Iterator<Price> iterator) {
+            this.iterator = iterator;
+            this.next = iterator.hasNext() ? iterator.next() : null;
+        }
+
+        private boolean hasNext() {
+            return next != null;
+        }
+
+        private Price peek() {
+            return next;
+        }
+
+        private List<Price> nextGroup(Price key) {
+            ArrayList<Price> result = new ArrayList<>();
+            while (next != null && PriceService.KEY_ORDER.compare(next, key) == 0) {
+                result.add(next);
+                next = iterator.hasNext() ? iterator.next() : null;
+            }
+            if (next != null && PriceService.KEY_ORDER.compare(next, key) < 0) {
+                throw new IllegalStateException("Prices are not ordered by key: " + next + " is read after " + key);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package services;
+
+import java.util.Arrays;
+
+/**
+ * Merges periods of one key in a single sweep over sorted period bounds.
+ * <p>
+ * Periods are given as parallel arrays. First existedCount periods are existed ones, the rest
+ * are new ones in the order they have to be applied. At every point of time the period with
+ * the greatest index wins, so new periods take precedence over existed ones and later new
+ * periods take precedence over earlier ones. Adjacent pieces with the same value are merged
+ * if at least one of them comes from a new period, or always when existed periods are coalesced
+ * too. The merged piece is owned by the first existed period of the run, if any.
+ */
+class PriceSweepMerger {
+    private volatile PriceMergeListener listener;
+
+    interface PeriodConsumer {
+        /**
+         * @param source     index of the period the piece belongs to.
+         * @param firstPiece true for the earliest piece of the source period.
+         */
+        void accept(int source, long begin, long end, boolean firstPiece);
+    }
+
+    void setListener(PriceMergeListener listener) {
+        this.listener = listener;
+    }
+
+    void merge(long[] begins, long[] ends, long[] values, int existedCount, int count, PeriodConsumer consumer) {
+        merge(begins, ends, values, existedCount, count, false, consumer);
+    }
+
+    void merge(long[] begins, long[] ends, long[] values, int existedCount, int count, boolean coalesceExisted,
+               PeriodConsumer consumer) {
+        if (count == 0) {
+            return;
+        }
+
+        int[] order = IndexSort.range(count);
+        IndexSort.sort(order, count, (i, j) -> Long.compare(begins[i], begins[j]));
+
+        long[] points = new long[count * 2];
+        System.arraycopy(begins, 0, points, 0, count);
+        System.arraycopy(ends, 0, points, count, count);
+        Arrays.sort(points);
+
+        int[] pieceSources = new int[count * 2];
+        long[] pieceBegins = new long[count * 2];
+        long[] pieceEnds = new long[count * 2];
+        int pieces = 0;
+
+        int[] active = new int[count];
+        int activeSize = 0;
+        int next = 0;
+        int current = -1;
+        long currentBegin = 0;
+
+        for (int i = 0; i < points.length; i++) {
+            long point = points[i];
+            if (i > 0 && point == points[i - 1]) {
+                continue;
+            }
+
+            while (next < count && begins[order[next]] <= point) {
+                int source = order[next++];
+                if (ends[source] > begins[source]) {
+                    activeSize = push(active, activeSize, source);
+                }
+            }
+            while (activeSize > 0 && ends[active[0]] <= point) {
+                activeSize = pop(active, activeSize);
+            }
+
+            int winner = activeSize == 0 ? -1 : active[0];
+            if (winner != current) {
+                if (current != -1) {
+                    pieceSources[pieces] = current;
+                    pieceBegins[pieces] = currentBegin;
+                    pieceEnds[pieces] = point;
+                    pieces++;
+                }
+                current = winner;
+                currentBegin = point;
+            }
+        }
+
+        PriceMergeListener listener = this.listener;
+        int[] existedPieces = listener == null ? null : new int[existedCount];
+        boolean[] merged = listener == null ? null : new boolean[existedCount];
+
+        boolean[] emitted = new boolean[count];
+        int runStart = 0;
+        for (int i = 1; i <= pieces; i++) {
+            if (i < pieces
+                    && pieceEnds[i - 1] == pieceBegins[i]
+                    && values[pieceSources[i - 1]] == values[pieceSources[i]]) {
+                continue;
+            }
+
+            int owner = -1;
+            boolean hasNewPeriod = false;
+            for (int j = runStart; j < i; j++) {
+                int source = pieceSources[j];
+                hasNewPeriod |= source >= existedCount;
+                if (owner == -1 && source < existedCount) {
+                    owner = source;
+                }
+            }
+
+            if ((hasNewPeriod || coalesceExisted) && i - runStart > 1) {
+                if (owner == -1) {
+                    owner = pieceSources[runStart];
+                }
+                consumer.accept(owner, pieceBegins[runStart], pieceEnds[i - 1], !emitted[owner]);
+                emitted[owner] = true;
+                if (listener != null) {
+                    reportMerged(listener, pieceSources, runStart, i, existedCount, merged);
+                }
+            } else {
+                for (int j = runStart; j < i; j++) {
+                    int source = pieceSources[j];
+                    consumer.accept(source, pieceBegins[j], pieceEnds[j], !emitted[source]);
+                    emitted[source] = true;
+                    if (listener != null && source < existedCount) {
+                        existedPieces[source]++;
+                    }
+                }
+            }
+            runStart = i;
+        }
+
+        if (listener != null) {
+            reportRelations(listener, begins, ends, existedCount, existedPieces, merged,
+                    pieceSources, pieceBegins, pieceEnds, pieces);
+        }
+    }
+
+    private static void reportMerged(PriceMergeListener listener, int[] pieceSources, int from, int to,
+                                     int existedCount, boolean[] merged) {
+        int sources = 0;
+        for (int j = from; j < to; j++) {
+            int source = pieceSources[j];
+            boolean seen = false;
+            for (int k = from; k < j && !seen; k++) {
+                seen = pieceSources[k] == source;
+            }
+            if (!seen) {
+                sources++;
+                if (source < existedCount) {
+                    merged[source] = true;
+                }
+            }
+        }
+        listener.onPricesMerged(sources - 1);
+    }
+
+    private static void reportRelations(PriceMergeListener listener, long[] begins, long[] ends, int existedCount,
+                                        int[] existedPieces, boolean[] merged,
+                                        int[] pieceSources, long[] pieceBegins, long[] pieceEnds, int pieces) {
+        long[] firstBegins = new long[existedCount];
+        long[] lastEnds = new long[existedCount];
+        for (int j = pieces - 1; j >= 0; j--) {
+            if (pieceSources[j] < existedCount) {
+                firstBegins[pieceSources[j]] = pieceBegins[j];
+            }
+        }
+        for (int j = 0; j < pieces; j++) {
+            if (pieceSources[j] < existedCount) {
+                lastEnds[pieceSources[j]] = pieceEnds[j];
+            }
+        }
+
+        for (int source = 0; source < existedCount; source++) {
+            if (merged[source] || ends[source] <= begins[source]) {
+                continue;
+            }
+            if (existedPieces[source] == 0) {
+                listener.onRelation(PriceService.TimePeriodRelation.ABSORPTION);
+            } else if (existedPieces[source] > 1) {
+                listener.onRelation(PriceService.TimePeriodRelation.OCCURRENCE);
+            } else {
+                if (lastEnds[source] < ends[source]) {
+                    listener.onRelation(PriceService.TimePeriodRelation.FORWARD_OFFSET);
+                }
+                if (firstBegins[source] > begins[source]) {
+                    listener.onRelation(PriceService.TimePeriodRelation.BACKWARD_OFFSET);
+                }
+            }
+        }
+    }
+
+    private static int push(int[] heap, int size, int value) {
+        int i = size;
+        heap[i] = value;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] >= heap[i]) {
+                break;
+            }
+            swap(heap, parent, i);
+            i = parent;
+        }
+        return size + 1;
+    }
+
+    private static int pop(int[] heap, int size) {
+        size--;
+        heap[0] = heap[size];
+        int i = 0;
+        while (true) {
+            int largest = i;
+            int left = i * 2 + 1;
+            int right = left + 1;
+            if (left < size && heap[left] > heap[largest]) {
+                largest = left;
+            }
+            if (right < size && heap[right] > heap[largest]) {
+                largest = right;
+            }
+            if (largest == i) {
+                return size;
+            }
+            swap(heap, i, largest);
+            i = largest;
+        }
+    }
+
+    private static void swap(int[] heap, int i, int j) {
+        int value = heap[i];
+        heap[i] = heap[j];
+        heap[j] = value;
+    }
+}
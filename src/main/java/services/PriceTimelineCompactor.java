@@ -0,0 +1,78 @@
+package services;
+
+import domain.PriceKey;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Incrementally compacts prices of a store, see {@link PriceService#compactPrices(Collection)}.
+ * <p>
+ * Keys of the store are tracked from the moment the compactor is created until it is closed:
+ * every key written since its last compaction is compacted on the next {@link #compact()},
+ * other keys are not read. A key is compacted by {@link PriceStore#update}, so it is not
+ * changed in between.
+ */
+public class PriceTimelineCompactor implements AutoCloseable {
+    private final PriceService priceService;
+    private final PriceStore store;
+    private final Set<PriceKey> changedKeys = ConcurrentHashMap.newKeySet();
+    private final Consumer<PriceKey> storeListener = this::onWrite;
+    private volatile Thread compactingThread;
+
+    public PriceTimelineCompactor(PriceService priceService, PriceStore store) {
+        this.priceService = priceService;
+        this.store = store;
+        store.addWriteListener(storeListener);
+        changedKeys.addAll(store.getKeys());
+    }
+
+    /**
+     * Compacts keys written since their last compaction.
+     *
+     * @return keys which prices have been changed.
+     */
+    public synchronized Set<PriceKey> compact() throws IOException {
+        Set<PriceKey> result = new LinkedHashSet<>();
+
+        compactingThread = Thread.currentThread();
+        try {
+            for (PriceKey key : new ArrayList<>(changedKeys)) {
+                changedKeys.remove(key);
+                try {
+                    result.addAll(priceService.compactPrices(store, Collections.singleton(key)));
+                } catch (IOException | RuntimeException e) {
+                    changedKeys.add(key);
+                    throw e;
+                }
+            }
+        } finally {
+            compactingThread = null;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the number of keys waiting for compaction.
+     */
+    public int getChangedKeysCount() {
+        return changedKeys.size();
+    }
+
+    /**
+     * Stops tracking keys written to the store.
+     */
+    @Override
+    public void close() {
+        store.removeWriteListener(storeListener);
+    }
+
+    private void onWrite(PriceKey key) {
+        if (Thread.currentThread() != compactingThread) {
+            changedKeys.add(key);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package services;
+
+import domain.PriceKey;
+import domain.PriceTimeline;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Persistent hash trie of timelines by key.
+ * <p>
+ * A trie is never changed, an {@link Editor} copies only the nodes on the paths of the keys
+ * it puts and shares all other nodes with the source trie. Nodes copied by an editor are
+ * changed in place until the editor builds its trie, so a batch of puts copies every node once.
+ */
+final class PriceTimelineTrie {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final PriceTimelineTrie EMPTY = new PriceTimelineTrie(new Node(null, new Object[WIDTH]), 0);
+
+    private final Node root;
+    private final int size;
+
+    private PriceTimelineTrie(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    static PriceTimelineTrie empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns the timeline of the key or null if there is no timeline.
+     */
+    PriceTimeline get(PriceKey key) {
+        int hash = hash(key);
+        Node node = root;
+        for (int shift = 0; ; shift += BITS) {
+            Object slot = node.slots[index(hash, shift)];
+            if (slot instanceof Node) {
+                node = (Node) slot;
+                continue;
+            }
+            for (Entry entry = (Entry) slot; entry != null; entry = entry.next) {
+                if (entry.hash == hash && entry.key.equals(key)) {
+                    return entry.timeline;
+                }
+            }
+            return null;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    void forEach(BiConsumer<PriceKey, PriceTimeline> consumer) {
+        forEach(root, consumer);
+    }
+
+    Editor edit() {
+        return new Editor(this);
+    }
+
+    private static void forEach(Node node, BiConsumer<PriceKey, PriceTimeline> consumer) {
+        for (Object slot : node.slots) {
+            if (slot instanceof Node) {
+                forEach((Node) slot, consumer);
+            } else {
+                for (Entry entry = (Entry) slot; entry != null; entry = entry.next) {
+                    consumer.accept(entry.key, entry.timeline);
+                }
+            }
+        }
+    }
+
+    private static int hash(PriceKey key) {
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int index(int hash, int shift) {
+        return shift >= Integer.SIZE ? 0 : (hash >>> shift) & (WIDTH - 1);
+    }
+
+    static final class Editor {
+        private Object owner = new Object();
+        private Node root;
+        private int size;
+
+        private Editor(PriceTimelineTrie trie) {
+            this.root = trie.root;
+            this.size = trie.size;
+        }
+
+        /**
+         * Puts the timeline of the key, an empty timeline removes the key.
+         */
+        void put(PriceKey key, PriceTimeline timeline) {
+            root = put(root, key, hash(key), 0, timeline.isEmpty() ? null : timeline);
+        }
+
+        PriceTimelineTrie build() {
+            owner = new Object();
+            return new PriceTimelineTrie(root, size);
+        }
+
+        private Node put(Node node, PriceKey key, int hash, int shift, PriceTimeline timeline) {
+            int index = index(hash, shift);
+            Object slot = node.slots[index];
+            Object newSlot;
+
+            if (slot instanceof Node) {
+                newSlot = put((Node) slot, key, hash, shift + BITS, timeline);
+            } else if (slot == null || ((Entry) slot).hash == hash) {
+                newSlot = put((Entry) slot, key, hash, timeline);
+            } else if (timeline == null) {
+                return node;
+            } else {
+                Entry entry = (Entry) slot;
+                Node child = new Node(owner, new Object[WIDTH]);
+                child.slots[index(entry.hash, shift + BITS)] = entry;
+                newSlot = put(child, key, hash, shift + BITS, timeline);
+            }
+
+            if (newSlot == slot) {
+                return node;
+            }
+            Node result = node.owner == owner ? node : new Node(owner, node.slots.clone());
+            result.slots[index] = newSlot;
+            return result;
+        }
+
+        /**
+         * Puts the timeline into the chain of entries with the same hash.
+         */
+        private Entry put(Entry chain, PriceKey key, int hash, PriceTimeline timeline) {
+            Entry rest = null;
+            boolean found = false;
+            for (Entry entry = chain; entry != null; entry = entry.next) {
+                if (entry.key.equals(key)) {
+                    if (entry.timeline == timeline) {
+                        return chain;
+                    }
+                    found = true;
+                } else {
+                    rest = new Entry(entry.key, hash, entry.timeline, rest);
+                }
+            }
+
+            if (found) {
+                size--;
+            } else if (timeline == null) {
+                return chain;
+            }
+            if (timeline == null) {
+                return rest;
+            }
+            size++;
+            return new Entry(key, hash, timeline, rest);
+        }
+    }
+
+    private static final class Node {
+        private final Object owner;
+        private final Object[] slots;
+
+        private Node(Object owner, Object[] slots) {
+            this.owner = owner;
+            this.slots = slots;
+        }
+    }
+
+    private static final class Entry {
+        private final PriceKey key;
+        private final int hash;
+        private final PriceTimeline timeline;
+        private final Entry next;
+
+        private Entry(PriceKey key, int hash, PriceTimeline timeline, Entry next) {
+            this.key = key;
+            this.hash = hash;
+            this.timeline = timeline;
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package services;
+
+import domain.PriceKey;
+import domain.PricePeriod;
+import domain.PriceTimeline;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Prices of all keys where every applied batch creates a new version.
+ * <p>
+ * A version is a {@link PriceBookSnapshot} over a persistent trie of immutable timelines, a
+ * new version copies only the timelines of changed keys and the trie paths to them. Batches are
+ * applied one at a time, snapshots are read from any thread without locking. Only the latest
+ * retained versions can be looked up by number, older ones are dropped and collected as soon as
+ * no reader holds their snapshots.
+ */
+public class VersionedPriceBook {
+    private final PriceService priceService;
+    private final int retainedVersions;
+    private final ConcurrentSkipListMap<Long, PriceBookSnapshot> versions = new ConcurrentSkipListMap<>();
+    private volatile PriceBookSnapshot current;
+
+    public VersionedPriceBook(PriceService priceService, int retainedVersions) {
+        if (retainedVersions < 1) {
+            throw new IllegalArgumentException("At least one version has to be retained: " + retainedVersions);
+        }
+        this.priceService = priceService;
+        this.retainedVersions = retainedVersions;
+        this.current = new PriceBookSnapshot(0, PriceTimelineTrie.empty());
+        versions.put(0L, current);
+    }
+
+    /**
+     * Joins new prices with the latest version and publishes the result as the next version.
+     *
+     * @return snapshot of the new version.
+     */
+    public synchronized PriceBookSnapshot apply(Collection<PricePeriod> newPrices) {
+        PriceTimelineTrie.Editor editor = current.getTimelines().edit();
+
+        for (Map.Entry<PriceKey, Collection<PricePeriod>> entry : priceService.groupPricePeriodsByKey(newPrices).entrySet()) {
+            PriceTimeline timeline = current.getTimeline(entry.getKey());
+            List<PricePeriod> mergedPrices = priceService.mergeKeyPricePeriods(timeline.getPrices(), entry.getValue());
+            if (!mergedPrices.equals(timeline.getPrices())) {
+                editor.put(entry.getKey(), PriceTimeline.of(mergedPrices));
+            }
+        }
+
+        return publish(editor.build());
+    }
+
+    /**
+     * Returns the snapshot of the latest version.
+     */
+    public PriceBookSnapshot getSnapshot() {
+        return current;
+    }
+
+    /**
+     * Returns the snapshot of a retained version.
+     *
+     * @throws IllegalArgumentException if the version is not retained.
+     */
+    public PriceBookSnapshot getSnapshot(long version) {
+        PriceBookSnapshot snapshot = versions.get(version);
+        if (snapshot == null) {
+            throw new IllegalArgumentException("Version is not retained: " + version);
+        }
+        return snapshot;
+    }
+
+    public long getVersion() {
+        return current.getVersion();
+    }
+
+    /**
+     * Returns numbers of retained versions in ascending order.
+     */
+    public NavigableSet<Long> getVersions() {
+        return Collections.unmodifiableNavigableSet(versions.keySet());
+    }
+
+    private PriceBookSnapshot publish(PriceTimelineTrie timelines) {
+        PriceBookSnapshot snapshot = new PriceBookSnapshot(current.getVersion() + 1, timelines);
+        versions.put(snapshot.getVersion(), snapshot);
+        current = snapshot;
+
+        while (versions.size() > retainedVersions) {
+            versions.pollFirstEntry();
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,43 @@
+package domain;
+
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.*;
+
+public class PriceKeyTest {
+
+    @Test
+    public void testKeysOfEqualCodesAreEqual() {
+        ProductCodeDictionary dictionary = new ProductCodeDictionary();
+        Price price1 = new Price(new String("122856"), 1, 2, new Date(0), new Date(10), 80);
+        Price price2 = new Price(new String("122856"), 1, 2, new Date(5), new Date(20), 90);
+        Price price3 = new Price("6654", 1, 2, new Date(0), new Date(10), 80);
+
+        PriceKey key = PriceKey.of(price1, dictionary);
+
+        assertThat(key, is(PriceKey.of(price2, dictionary)));
+        assertThat(key.hashCode(), is(PriceKey.of(price2, dictionary).hashCode()));
+        assertThat(key, is(not(PriceKey.of(price3, dictionary))));
+        assertThat(key, is(new PriceKey(0, 1, 2)));
+        assertThat(key, is(not(new PriceKey(0, 2, 1))));
+    }
+
+    @Test
+    public void testPricePeriodKey() {
+        ProductCodeDictionary dictionary = new ProductCodeDictionary();
+        Price price = new Price("122856", 1, 2, new Date(0), new Date(10), 80);
+        price.setId(7);
+
+        PricePeriod pricePeriod = PricePeriod.of(price, dictionary);
+
+        assertThat(PriceKey.of(pricePeriod), is(PriceKey.of(price, dictionary)));
+        assertThat(pricePeriod, is(new PricePeriod(0, 0, 1, 2, 0, 10, 80)));
+        assertThat(pricePeriod, is(not(new PricePeriod(7, 1, 1, 2, 0, 10, 80))));
+        assertThat(pricePeriod.toPrice(dictionary), is(price));
+        assertThat(pricePeriod.toPrice(dictionary).getId(), is(7L));
+    }
+}
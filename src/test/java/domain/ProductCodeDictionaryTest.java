@@ -0,0 +1,62 @@
+package domain;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class ProductCodeDictionaryTest {
+
+    @Test
+    public void testGetId() {
+        ProductCodeDictionary dictionary = new ProductCodeDictionary();
+
+        assertThat(dictionary.getId("122856"), is(0));
+        assertThat(dictionary.getId("6654"), is(1));
+        assertThat(dictionary.getId(new String("122856")), is(0));
+        assertThat(dictionary.findId("6654"), is(1));
+        assertThat(dictionary.findId("unknown"), is(-1));
+        assertThat(dictionary.getCode(1), is("6654"));
+        assertThat(dictionary.size(), is(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetUnknownCode() {
+        new ProductCodeDictionary().getCode(0);
+    }
+
+    @Test
+    public void testConcurrentGetId() throws Exception {
+        ProductCodeDictionary dictionary = new ProductCodeDictionary();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<int[]>> futures = new ArrayList<>();
+            for (int worker = 0; worker < 4; worker++) {
+                futures.add(executor.submit(() -> {
+                    int[] ids = new int[1000];
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = dictionary.getId(String.valueOf(i));
+                    }
+                    return ids;
+                }));
+            }
+
+            int[] ids = futures.get(0).get();
+            for (Future<int[]> future : futures) {
+                assertArrayEquals(ids, future.get());
+            }
+            Set<Integer> distinctIds = new HashSet<>();
+            for (int i = 0; i < ids.length; i++) {
+                distinctIds.add(ids[i]);
+                assertThat(dictionary.getCode(ids[i]), is(String.valueOf(i)));
+            }
+            assertThat(distinctIds.size(), is(1000));
+            assertThat(dictionary.size(), is(1000));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
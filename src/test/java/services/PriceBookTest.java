@@ -0,0 +1,115 @@
+package services;
+
+import domain.PriceKey;
+import domain.PricePeriod;
+import domain.PriceTimeline;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class PriceBookTest {
+
+    private PriceService priceService;
+    private PriceBook priceBook;
+    private SimpleDateFormat simpleDateFormat;
+
+    @Before
+    public void setUp() {
+        priceService = new PriceService();
+        priceBook = new PriceBook(priceService, 8);
+        simpleDateFormat = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
+    }
+
+    @Test
+    public void testApplyKeepsSnapshots() throws Exception {
+        PricePeriod existedPrice = new PricePeriod(1, 0, 1, 1, time("01.01.2013 00:00:00"), time("30.01.2013 00:00:00"), 50);
+        PricePeriod newPrice = new PricePeriod(0, 0, 1, 1, time("05.01.2013 00:00:00"), time("15.01.2013 00:00:00"), 60);
+        PriceKey key = PriceKey.of(existedPrice);
+
+        assertThat(priceBook.apply(Collections.singletonList(existedPrice)), is(Collections.singleton(key)));
+        PriceTimeline snapshot = priceBook.getTimeline(key);
+
+        assertThat(priceBook.apply(Collections.singletonList(newPrice)), is(Collections.singleton(key)));
+        assertThat(priceBook.apply(Collections.singletonList(newPrice)), is(Collections.<PriceKey>emptySet()));
+
+        assertThat(snapshot.getPrices(), is(Collections.singletonList(existedPrice)));
+        assertThat(priceBook.getTimeline(key).size(), is(3));
+        assertThat(priceBook.findPrice(key, time("10.01.2013 00:00:00")), is(newPrice));
+        assertThat(priceBook.findPrice(key, time("20.01.2013 00:00:00")).getValue(), is(50L));
+    }
+
+    @Test
+    public void testConcurrentApply() throws Exception {
+        // merges of a key run under its lock, so they are recorded in lock acquisition order
+        Map<PriceKey, List<Collection<PricePeriod>>> mergedBatches = new ConcurrentHashMap<>();
+        PriceBook priceBook = new PriceBook(new PriceService() {
+            @Override
+            public List<PricePeriod> mergeKeyPricePeriods(Collection<PricePeriod> existedPrices, Collection<PricePeriod> newPrices) {
+                mergedBatches.computeIfAbsent(PriceKey.of(newPrices.iterator().next()), key -> new CopyOnWriteArrayList<>()).add(newPrices);
+                return super.mergeKeyPricePeriods(existedPrices, newPrices);
+            }
+        }, 4);
+        PriceGenerator generator = new PriceGenerator(42);
+
+        List<List<List<PricePeriod>>> workerBatches = new ArrayList<>();
+        for (int worker = 0; worker < 8; worker++) {
+            List<List<PricePeriod>> batches = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                batches.add(generator.generatePricePeriods(50, 4, 4, 1));
+            }
+            workerBatches.add(batches);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (List<List<PricePeriod>> batches : workerBatches) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (List<PricePeriod> batch : batches) {
+                        priceBook.apply(batch);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        int keyBatchesCount = 0;
+        for (List<List<PricePeriod>> batches : workerBatches) {
+            for (List<PricePeriod> batch : batches) {
+                keyBatchesCount += priceService.groupPricePeriodsByKey(batch).size();
+            }
+        }
+        int mergedBatchesCount = 0;
+        for (List<Collection<PricePeriod>> batches : mergedBatches.values()) {
+            mergedBatchesCount += batches.size();
+        }
+        assertThat(mergedBatchesCount, is(keyBatchesCount));
+
+        assertThat(priceBook.getKeys(), is(mergedBatches.keySet()));
+        for (Map.Entry<PriceKey, List<Collection<PricePeriod>>> entry : mergedBatches.entrySet()) {
+            List<PricePeriod> expectedPrices = Collections.emptyList();
+            for (Collection<PricePeriod> batch : entry.getValue()) {
+                expectedPrices = priceService.mergeKeyPricePeriods(expectedPrices, batch);
+            }
+            assertThat(priceBook.getTimeline(entry.getKey()).getPrices(), is(expectedPrices));
+        }
+    }
+
+    private long time(String date) throws Exception {
+        return simpleDateFormat.parse(date).getTime();
+    }
+}
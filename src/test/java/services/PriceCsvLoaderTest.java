@@ -0,0 +1,231 @@
+package services;
+
+import domain.PriceKey;
+import domain.PricePeriod;
+import domain.ProductCodeDictionary;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class PriceCsvLoaderTest {
+
+    private Path file;
+    private SimpleDateFormat simpleDateFormat;
+    private ForkJoinPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile("prices", ".csv");
+        simpleDateFormat = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
+        pool = new ForkJoinPool(4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.shutdown();
+        Files.delete(file);
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        write("# productCode,number,depart,begin,end,value\n" +
+                "122856,1,1,01.01.2013 00:00:00,31.01.2013 23:59:59,11000\r\n" +
+                "\n" +
+                "6654,2,1,12.01.2013 00:00:00,13.01.2013 00:00:00,-5");
+
+        ProductCodeDictionary dictionary = new ProductCodeDictionary();
+        List<PricePeriod> prices = new PriceCsvLoader(dictionary, TimeZone.getDefault(), pool, 16).load(file);
+
+        int productCodeId1 = dictionary.getId("122856");
+        int productCodeId2 = dictionary.getId("6654");
+        assertThat(prices, is(Arrays.asList(
+                new PricePeriod(0, productCodeId1, 1, 1, time("01.01.2013 00:00:00"), time("31.01.2013 23:59:59"), 11000),
+                new PricePeriod(0, productCodeId2, 2, 1, time("12.01.2013 00:00:00"), time("13.01.2013 00:00:00"), -5))));
+    }
+
+    @Test
+    public void testLoadChunksKeepFileOrder() throws Exception {
+        Random random = new Random(15);
+        StringBuilder text = new StringBuilder();
+        List<String[]> lines = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            String begin = simpleDateFormat.format(new Date(time("01.01.2013 00:00:00") + random.nextInt(400) * 3_600_000L));
+            String end = simpleDateFormat.format(new Date(time("20.01.2013 00:00:00") + random.nextInt(4000) * 3_600_000L));
+            String[] line = {"code" + random.nextInt(20), String.valueOf(random.nextInt(3)), String.valueOf(random.nextInt(3)),
+                    begin, end, String.valueOf(random.nextInt(100000))};
+            lines.add(line);
+            text.append(String.join(",", line)).append('\n');
+        }
+        write(text.toString());
+
+        ProductCodeDictionary dictionary = new ProductCodeDictionary();
+        List<PricePeriod> prices = new PriceCsvLoader(dictionary, TimeZone.getDefault(), pool, 100).load(file);
+
+        assertThat(prices.size(), is(lines.size()));
+        for (int i = 0; i < lines.size(); i++) {
+            String[] line = lines.get(i);
+            PricePeriod price = prices.get(i);
+            assertThat(dictionary.getCode(price.getProductCodeId()), is(line[0]));
+            assertThat(price.getNumber(), is(Integer.parseInt(line[1])));
+            assertThat(price.getDepart(), is(Integer.parseInt(line[2])));
+            assertThat(price.getBegin(), is(time(line[3])));
+            assertThat(price.getEnd(), is(time(line[4])));
+            assertThat(price.getValue(), is(Long.parseLong(line[5])));
+        }
+    }
+
+    @Test
+    public void testLoadInto() throws Exception {
+        write("122856,1,1,01.01.2013 00:00:00,20.01.2013 00:00:00,11000\n" +
+                "6654,2,1,01.01.2013 00:00:00,10.01.2013 00:00:00,5000\n" +
+                "122856,1,1,10.01.2013 00:00:00,15.01.2013 00:00:00,12000\n");
+
+        PriceService priceService = new PriceService();
+        PriceBook priceBook = new PriceBook(priceService);
+        PriceCsvLoader loader = new PriceCsvLoader(priceService.getDictionary(), TimeZone.getDefault(), pool, 16);
+
+        Set<PriceKey> changedKeys = loader.loadInto(file, priceBook);
+
+        assertThat(changedKeys.size(), is(2));
+        PriceKey key = loader.loadByKey(file).keySet().iterator().next();
+        assertThat(priceBook.findPrice(key, time("12.01.2013 00:00:00")).getValue(), is(12000L));
+        assertThat(priceBook.findPrice(key, time("16.01.2013 00:00:00")).getValue(), is(11000L));
+        assertThat(priceBook.getTimeline(key).size(), is(3));
+    }
+
+    @Test
+    public void testLoadInDaylightSavingTimeZone() throws Exception {
+        write("1,1,1,01.03.2013 12:00:00,01.07.2013 12:00:00,1\n" +
+                "1,1,1,10.03.2013 01:59:59,10.03.2013 03:00:00,2\n" +
+                "1,1,1,03.11.2013 00:30:00,03.11.2013 23:30:00,3\n");
+
+        TimeZone timeZone = TimeZone.getTimeZone("America/New_York");
+        simpleDateFormat.setTimeZone(timeZone);
+        List<PricePeriod> prices = new PriceCsvLoader(new ProductCodeDictionary(), timeZone, pool, 16).load(file);
+
+        assertThat(prices.get(0).getBegin(), is(time("01.03.2013 12:00:00")));
+        assertThat(prices.get(0).getEnd(), is(time("01.07.2013 12:00:00")));
+        assertThat(prices.get(1).getBegin(), is(time("10.03.2013 01:59:59")));
+        assertThat(prices.get(1).getEnd(), is(time("10.03.2013 03:00:00")));
+        assertThat(prices.get(2).getBegin(), is(time("03.11.2013 00:30:00")));
+        assertThat(prices.get(2).getEnd(), is(time("03.11.2013 23:30:00")));
+    }
+
+    @Test
+    public void testLoadIntoByChunksMatchesWholeFileJoin() throws Exception {
+        PriceGenerator generator = new PriceGenerator(20);
+        StringBuilder text = new StringBuilder();
+        for (PricePeriod price : generator.generatePricePeriods(2000, 10, 3, 2)) {
+            text.append("code").append(price.getProductCodeId()).append(',')
+                    .append(price.getNumber()).append(',')
+                    .append(price.getDepart()).append(',')
+                    .append(simpleDateFormat.format(new Date(price.getBegin()))).append(',')
+                    .append(simpleDateFormat.format(new Date(price.getEnd()))).append(',')
+                    .append(price.getValue()).append('\n');
+        }
+        write(text.toString());
+
+        PriceService priceService = new PriceService();
+        PriceCsvLoader loader = new PriceCsvLoader(priceService.getDictionary(), TimeZone.getDefault(), pool, 1000);
+        PriceBook priceBook = new PriceBook(priceService);
+        PriceBook expectedPriceBook = new PriceBook(priceService);
+
+        Set<PriceKey> changedKeys = loader.loadInto(file, priceBook);
+        expectedPriceBook.apply(loader.load(file));
+
+        assertThat(changedKeys, is(expectedPriceBook.getKeys()));
+        for (PriceKey key : expectedPriceBook.getKeys()) {
+            assertThat(priceBook.getTimeline(key).getPrices(), is(expectedPriceBook.getTimeline(key).getPrices()));
+        }
+    }
+
+    @Test
+    public void testLoadIntoStopsAtMalformedChunk() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append("code").append(i).append(",1,1,01.01.2013 00:00:00,20.01.2013 00:00:00,").append(i).append('\n');
+        }
+        text.append("code100,1,1,01.01.2013 00:00:00,20.01.2013,100\n");
+        for (int i = 101; i < 200; i++) {
+            text.append("code").append(i).append(",1,1,01.01.2013 00:00:00,20.01.2013 00:00:00,").append(i).append('\n');
+        }
+        write(text.toString());
+
+        PriceService priceService = new PriceService();
+        PriceBook priceBook = new PriceBook(priceService);
+        PriceCsvLoader loader = new PriceCsvLoader(priceService.getDictionary(), TimeZone.getDefault(), pool, 1000);
+
+        try {
+            loader.loadInto(file, priceBook);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        Set<String> loadedCodes = new HashSet<>();
+        for (PriceKey key : priceBook.getKeys()) {
+            loadedCodes.add(priceService.getDictionary().getCode(key.getProductCodeId()));
+        }
+        assertFalse(loadedCodes.isEmpty());
+        assertTrue(loadedCodes.size() < 100);
+        for (int i = 0; i < loadedCodes.size(); i++) {
+            assertTrue(loadedCodes.contains("code" + i));
+        }
+    }
+
+    @Test
+    public void testLoadLongProductCode() throws Exception {
+        StringBuilder productCode = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            productCode.append((char) ('a' + i % 26));
+        }
+        write(productCode + ",1,1,01.01.2013 00:00:00,20.01.2013 00:00:00,11000\n" +
+                productCode + ",2,1,01.01.2013 00:00:00,20.01.2013 00:00:00,11000\n");
+
+        ProductCodeDictionary dictionary = new ProductCodeDictionary();
+        List<PricePeriod> prices = new PriceCsvLoader(dictionary, TimeZone.getDefault(), pool, 1024).load(file);
+
+        assertThat(prices.size(), is(2));
+        assertThat(dictionary.getCode(prices.get(0).getProductCodeId()), is(productCode.toString()));
+        assertThat(prices.get(1).getProductCodeId(), is(prices.get(0).getProductCodeId()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLoadNumberOutOfRange() throws Exception {
+        write("122856,3000000000,1,01.01.2013 00:00:00,20.01.2013 00:00:00,11000\n");
+
+        new PriceCsvLoader(new ProductCodeDictionary(), TimeZone.getDefault(), pool, 16).load(file);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLoadValueOutOfRange() throws Exception {
+        write("122856,1,1,01.01.2013 00:00:00,20.01.2013 00:00:00,99999999999999999999\n");
+
+        new PriceCsvLoader(new ProductCodeDictionary(), TimeZone.getDefault(), pool, 16).load(file);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLoadMalformed() throws Exception {
+        write("122856,1,1,01.01.2013,20.01.2013 00:00:00,11000\n");
+
+        new PriceCsvLoader(new ProductCodeDictionary(), TimeZone.getDefault(), pool, 16).load(file);
+    }
+
+    private void write(String text) throws Exception {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long time(String text) throws Exception {
+        return simpleDateFormat.parse(text).getTime();
+    }
+}
@@ -0,0 +1,47 @@
+package services;
+
+import domain.Price;
+import domain.PricePeriod;
+
+import java.util.*;
+
+/**
+ * Generates random prices of 1-20 days beginning within 60 days from 01.01.2013 with values 0-4.
+ */
+class PriceGenerator {
+    static final long BEGIN = new GregorianCalendar(2013, Calendar.JANUARY, 1).getTimeInMillis();
+    static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private final Random random;
+
+    PriceGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    Random getRandom() {
+        return random;
+    }
+
+    PricePeriod nextPricePeriod(int productCodeId, int number, int depart) {
+        long begin = BEGIN + random.nextInt(60) * DAY;
+        return new PricePeriod(0, productCodeId, number, depart, begin, begin + (1 + random.nextInt(20)) * DAY, random.nextInt(5));
+    }
+
+    List<PricePeriod> generatePricePeriods(int count, int productCodes, int numbers, int departs) {
+        List<PricePeriod> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            result.add(nextPricePeriod(random.nextInt(productCodes), random.nextInt(numbers), random.nextInt(departs)));
+        }
+        return result;
+    }
+
+    List<Price> generatePrices(int count, int productCodes, int numbers) {
+        List<Price> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            long begin = BEGIN + random.nextInt(60) * DAY;
+            result.add(new Price(String.valueOf(random.nextInt(productCodes)), random.nextInt(numbers), 1,
+                    new Date(begin), new Date(begin + (1 + random.nextInt(20)) * DAY), random.nextInt(5)));
+        }
+        return result;
+    }
+}
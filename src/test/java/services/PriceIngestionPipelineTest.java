@@ -0,0 +1,166 @@
+package services;
+
+import domain.PriceKey;
+import domain.PricePeriod;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class PriceIngestionPipelineTest {
+
+    private PriceService priceService;
+    private SimpleDateFormat simpleDateFormat;
+
+    @Before
+    public void setUp() {
+        priceService = new PriceService();
+        simpleDateFormat = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
+    }
+
+    @Test
+    public void testSubmitAppliesUpdates() throws Exception {
+        PriceGenerator generator = new PriceGenerator(18);
+        List<PricePeriod> prices = new ArrayList<>();
+        for (PricePeriod price : generator.generatePricePeriods(3000, 20, 3, 1)) {
+            prices.add(price.withPeriod(prices.size() + 1, price.getBegin(), price.getEnd()));
+        }
+
+        Map<PriceKey, List<List<PricePeriod>>> appliedBatches = new ConcurrentHashMap<>();
+        PriceBook priceBook = new PriceBook(priceService) {
+            @Override
+            public boolean apply(PriceKey key, Collection<PricePeriod> newPrices) {
+                appliedBatches.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(new ArrayList<>(newPrices));
+                return super.apply(key, newPrices);
+            }
+        };
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        try (PriceIngestionPipeline pipeline = new PriceIngestionPipeline(priceBook, 100, 50, 5, TimeUnit.MILLISECONDS, 4)) {
+            for (PricePeriod price : prices) {
+                futures.add(pipeline.submit(price));
+            }
+            for (CompletableFuture<Boolean> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        }
+
+        Map<PriceKey, Collection<PricePeriod>> keyPrices = priceService.groupPricePeriodsByKey(prices);
+        assertThat(priceBook.getKeys(), is(keyPrices.keySet()));
+        for (Map.Entry<PriceKey, Collection<PricePeriod>> entry : keyPrices.entrySet()) {
+            List<PricePeriod> expectedPrices = Collections.emptyList();
+            List<Long> appliedIds = new ArrayList<>();
+            for (List<PricePeriod> batch : appliedBatches.get(entry.getKey())) {
+                expectedPrices = priceService.mergeKeyPricePeriods(expectedPrices, batch);
+                batch.forEach(price -> appliedIds.add(price.getId()));
+            }
+
+            List<Long> submittedIds = new ArrayList<>();
+            entry.getValue().forEach(price -> submittedIds.add(price.getId()));
+            submittedIds.retainAll(appliedIds);
+            assertThat(appliedIds, is(submittedIds));
+            assertPrices(priceBook.getTimeline(entry.getKey()).getPrices(), expectedPrices);
+        }
+    }
+
+    @Test
+    public void testLatestPricesKeepJoinResult() throws Exception {
+        PriceGenerator generator = new PriceGenerator(19);
+        for (int i = 0; i < 200; i++) {
+            List<PricePeriod> existedPrices = priceService.mergeKeyPricePeriods(Collections.<PricePeriod>emptyList(), generator.generatePricePeriods(10, 1, 1, 1));
+            List<PricePeriod> newPrices = new ArrayList<>();
+            for (PricePeriod price : generator.generatePricePeriods(20, 1, 1, 1)) {
+                newPrices.add(price.withPeriod(newPrices.size() + 100, price.getBegin(), price.getEnd()));
+            }
+
+            assertPrices(priceService.mergeKeyPricePeriods(existedPrices, PriceIngestionPipeline.getLatestPrices(newPrices)),
+                    priceService.mergeKeyPricePeriods(existedPrices, newPrices));
+        }
+    }
+
+    @Test
+    public void testCloseAppliesQueuedUpdates() throws Exception {
+        PricePeriod price = new PricePeriod(0, 0, 1, 1, time("01.01.2013 00:00:00"), time("10.01.2013 00:00:00"), 80);
+        PriceBook priceBook = new PriceBook(priceService);
+
+        PriceIngestionPipeline pipeline = new PriceIngestionPipeline(priceBook, 10, 10, 1, TimeUnit.SECONDS, 1);
+        CompletableFuture<Boolean> future1 = pipeline.submit(price);
+        CompletableFuture<Boolean> future2 = pipeline.submit(price);
+        pipeline.close();
+
+        assertTrue(future1.isDone());
+        assertThat(future2.get(), is(true));
+        assertThat(priceBook.findPrice(PriceKey.of(price), time("05.01.2013 00:00:00")), is(price));
+        try {
+            pipeline.submit(price);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testFailedJoinCompletesFuturesExceptionally() throws Exception {
+        PricePeriod failingPrice = new PricePeriod(0, 0, 1, 1, time("01.01.2013 00:00:00"), time("10.01.2013 00:00:00"), 80);
+        PricePeriod price = new PricePeriod(0, 1, 1, 1, time("01.01.2013 00:00:00"), time("10.01.2013 00:00:00"), 80);
+        PriceBook priceBook = new PriceBook(priceService) {
+            @Override
+            public boolean apply(PriceKey key, Collection<PricePeriod> newPrices) {
+                if (key.equals(PriceKey.of(failingPrice))) {
+                    throw new IllegalStateException("failed");
+                }
+                return super.apply(key, newPrices);
+            }
+        };
+
+        try (PriceIngestionPipeline pipeline = new PriceIngestionPipeline(priceBook, 10, 10, 1, TimeUnit.MILLISECONDS, 1)) {
+            try {
+                pipeline.submit(null);
+                fail();
+            } catch (NullPointerException e) {
+                // expected
+            }
+
+            CompletableFuture<Boolean> failingFuture = pipeline.submit(failingPrice);
+            try {
+                failingFuture.get(10, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertThat(e.getCause().getMessage(), is("failed"));
+            }
+            assertThat(pipeline.submit(price).get(10, TimeUnit.SECONDS), is(true));
+        }
+    }
+
+    @Test
+    public void testGetLatestPrices() throws Exception {
+        PricePeriod price1 = new PricePeriod(0, 0, 1, 1, time("05.01.2013 00:00:00"), time("10.01.2013 00:00:00"), 80);
+        PricePeriod price2 = new PricePeriod(0, 0, 1, 1, time("01.01.2013 00:00:00"), time("12.01.2013 00:00:00"), 90);
+        PricePeriod price3 = new PricePeriod(0, 0, 1, 1, time("10.01.2013 00:00:00"), time("20.01.2013 00:00:00"), 85);
+        PricePeriod price4 = new PricePeriod(0, 0, 1, 1, time("01.01.2013 00:00:00"), time("10.01.2013 00:00:00"), 70);
+        PricePeriod price5 = new PricePeriod(0, 0, 1, 1, time("15.01.2013 00:00:00"), time("25.01.2013 00:00:00"), 60);
+
+        List<PricePeriod> prices = PriceIngestionPipeline.getLatestPrices(Arrays.asList(price1, price2, price3, price4, price5));
+
+        assertThat(prices, is(Arrays.asList(price3, price4, price5)));
+    }
+
+    private void assertPrices(List<PricePeriod> prices, List<PricePeriod> expectedPrices) {
+        assertThat(prices, is(expectedPrices));
+        for (int i = 0; i < prices.size(); i++) {
+            assertThat(prices.get(i).getId(), is(expectedPrices.get(i).getId()));
+        }
+    }
+
+    private long time(String date) throws Exception {
+        return simpleDateFormat.parse(date).getTime();
+    }
+}
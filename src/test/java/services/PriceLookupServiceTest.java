@@ -0,0 +1,132 @@
+package services;
+
+import domain.PriceKey;
+import domain.PricePeriod;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class PriceLookupServiceTest {
+
+    private SimpleDateFormat simpleDateFormat;
+    private Map<PriceKey, List<PricePeriod>> prices;
+    private List<PriceKey> loadedKeys;
+    private PriceLookupService priceLookupService;
+
+    @Before
+    public void setUp() {
+        simpleDateFormat = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
+        prices = new HashMap<>();
+        loadedKeys = new ArrayList<>();
+        priceLookupService = new PriceLookupService(key -> {
+            loadedKeys.add(key);
+            return prices.getOrDefault(key, Collections.emptyList());
+        }, 2);
+    }
+
+    @Test
+    public void testFindPrice() throws Exception {
+        PricePeriod price1 = new PricePeriod(1, 0, 1, 1, time("01.01.2013 00:00:00"), time("10.01.2013 00:00:00"), 80);
+        PricePeriod price2 = new PricePeriod(2, 0, 1, 1, time("10.01.2013 00:00:00"), time("20.01.2013 00:00:00"), 87);
+        PricePeriod price3 = new PricePeriod(3, 0, 1, 1, time("25.01.2013 00:00:00"), time("30.01.2013 00:00:00"), 90);
+        PriceKey key = PriceKey.of(price1);
+        prices.put(key, Arrays.asList(price3, price1, price2));
+
+        assertNull(priceLookupService.findPrice(key, time("31.12.2012 00:00:00")));
+        assertThat(priceLookupService.findPrice(key, time("01.01.2013 00:00:00")), is(price1));
+        assertThat(priceLookupService.findPrice(key, time("09.01.2013 23:59:59")), is(price1));
+        assertThat(priceLookupService.findPrice(key, time("10.01.2013 00:00:00")), is(price2));
+        assertNull(priceLookupService.findPrice(key, time("22.01.2013 00:00:00")));
+        assertThat(priceLookupService.findPrice(key, time("29.01.2013 00:00:00")), is(price3));
+        assertNull(priceLookupService.findPrice(key, time("30.01.2013 00:00:00")));
+        assertNull(priceLookupService.findPrice(new PriceKey(1, 1, 1), time("05.01.2013 00:00:00")));
+
+        assertThat(loadedKeys, is(Arrays.asList(key, new PriceKey(1, 1, 1))));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedKeyIsEvicted() throws Exception {
+        PriceKey key1 = new PriceKey(1, 1, 1);
+        PriceKey key2 = new PriceKey(2, 1, 1);
+        PriceKey key3 = new PriceKey(3, 1, 1);
+
+        priceLookupService.getTimeline(key1);
+        priceLookupService.getTimeline(key2);
+        priceLookupService.getTimeline(key1);
+        priceLookupService.getTimeline(key3);
+        priceLookupService.getTimeline(key1);
+        priceLookupService.getTimeline(key2);
+
+        assertThat(priceLookupService.getCachedKeysCount(), is(2));
+        assertThat(loadedKeys, is(Arrays.asList(key1, key2, key3, key2)));
+    }
+
+    @Test
+    public void testInvalidateDuringLoad() throws Exception {
+        PriceKey key1 = new PriceKey(1, 1, 1);
+        PriceKey key2 = new PriceKey(2, 1, 1);
+        List<PriceKey> invalidatedKeys = new ArrayList<>();
+        PriceLookupService lookupService = new PriceLookupService(key -> {
+            loadedKeys.add(key);
+            priceLookupService.invalidate(invalidatedKeys);
+            return Collections.emptyList();
+        }, 2);
+        priceLookupService = lookupService;
+
+        invalidatedKeys.add(key2);
+        lookupService.getTimeline(key1);
+        lookupService.getTimeline(key1);
+
+        invalidatedKeys.add(key1);
+        lookupService.invalidate(key1);
+        lookupService.getTimeline(key1);
+        lookupService.getTimeline(key1);
+
+        assertThat(loadedKeys, is(Arrays.asList(key1, key1, key1)));
+        assertThat(lookupService.getCachedKeysCount(), is(0));
+    }
+
+    @Test
+    public void testInvalidateKeyChangedInStore() throws Exception {
+        Path directory = Files.createTempDirectory("prices");
+        try (PriceStore store = PriceStore.open(directory)) {
+            PriceService priceService = new PriceService(store.getDictionary());
+            PriceLookupService storeLookupService = new PriceLookupService(store, 10);
+
+            PricePeriod existedPrice = new PricePeriod(1, store.getDictionary().getId("1"), 1, 1, time("01.01.2013 00:00:00"), time("30.01.2013 00:00:00"), 50);
+            PricePeriod newPrice = existedPrice.withPeriod(0, time("05.01.2013 00:00:00"), time("15.01.2013 00:00:00"));
+            PricePeriod newPrice2 = new PricePeriod(0, existedPrice.getProductCodeId(), 1, 1, time("05.01.2013 00:00:00"), time("15.01.2013 00:00:00"), 60);
+            PriceKey key = PriceKey.of(existedPrice);
+            store.write(key, Collections.singletonList(existedPrice));
+
+            assertThat(storeLookupService.findPrice(key, time("10.01.2013 00:00:00")).getValue(), is(50L));
+
+            priceService.mergePrices(store, Collections.singletonList(newPrice));
+            assertThat(storeLookupService.getCachedKeysCount(), is(1));
+
+            priceService.mergePrices(store, Collections.singletonList(newPrice2));
+            assertThat(storeLookupService.getCachedKeysCount(), is(0));
+            assertThat(storeLookupService.findPrice(key, time("10.01.2013 00:00:00")).getValue(), is(60L));
+
+            storeLookupService.close();
+            store.write(key, Collections.singletonList(existedPrice));
+            assertThat(storeLookupService.getCachedKeysCount(), is(1));
+        } finally {
+            for (String file : Arrays.asList("prices.0.dat", "index.dat", "codes.dat")) {
+                Files.deleteIfExists(directory.resolve(file));
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private long time(String date) throws Exception {
+        return simpleDateFormat.parse(date).getTime();
+    }
+}
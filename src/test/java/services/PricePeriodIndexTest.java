@@ -0,0 +1,55 @@
+package services;
+
+import domain.Price;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class PricePeriodIndexTest {
+
+    private SimpleDateFormat simpleDateFormat;
+
+    @Before
+    public void setUp() {
+        simpleDateFormat = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
+    }
+
+    @Test
+    public void testFindIntersectedInTimeline() throws Exception {
+        Price price1 = new Price("1", 1, 1, simpleDateFormat.parse("01.01.2012 00:00:00"), simpleDateFormat.parse("01.01.2013 00:00:00"), 80);
+        Price price2 = new Price("1", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("10.01.2013 00:00:00"), 90);
+        Price price3 = new Price("1", 1, 1, simpleDateFormat.parse("10.01.2013 00:00:00"), simpleDateFormat.parse("20.01.2013 00:00:00"), 80);
+        Price price4 = new Price("1", 1, 1, simpleDateFormat.parse("25.01.2013 00:00:00"), simpleDateFormat.parse("30.01.2013 00:00:00"), 70);
+        PricePeriodIndex index = new PricePeriodIndex(Arrays.asList(price3, price1, price4, price2));
+
+        assertThat(index.findIntersected(time("01.01.2013 00:00:00"), time("05.01.2013 00:00:00")), is(Arrays.asList(price1, price2)));
+        assertThat(index.findIntersected(time("12.01.2013 00:00:00"), time("25.01.2013 00:00:00")), is(Arrays.asList(price3, price4)));
+        assertThat(index.findIntersected(time("21.01.2013 00:00:00"), time("24.01.2013 00:00:00")), is(Collections.<Price>emptyList()));
+    }
+
+    @Test
+    public void testFindIntersectedWithOverlappingPrices() throws Exception {
+        Price price1 = new Price("1", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("30.01.2013 00:00:00"), 80);
+        Price price2 = new Price("1", 1, 1, simpleDateFormat.parse("05.01.2013 00:00:00"), simpleDateFormat.parse("10.01.2013 00:00:00"), 90);
+        Price price3 = new Price("1", 1, 1, simpleDateFormat.parse("12.01.2013 00:00:00"), simpleDateFormat.parse("15.01.2013 00:00:00"), 70);
+        PricePeriodIndex index = new PricePeriodIndex(Arrays.asList(price1, price2, price3));
+
+        assertThat(index.findIntersected(time("20.01.2013 00:00:00"), time("22.01.2013 00:00:00")), is(Collections.singletonList(price1)));
+        assertThat(index.findIntersected(time("10.01.2013 00:00:00"), time("11.01.2013 00:00:00")), is(Arrays.asList(price1, price2)));
+
+        index.remove(price1);
+        index.remove(price2);
+        index.remove(price3);
+        index.add(price3);
+        assertThat(index.findIntersected(time("13.01.2013 00:00:00"), time("14.01.2013 00:00:00")), is(Collections.singletonList(price3)));
+    }
+
+    private long time(String date) throws Exception {
+        return simpleDateFormat.parse(date).getTime();
+    }
+}
@@ -1,11 +1,16 @@
 package services;
 
 import domain.Price;
+import domain.PriceChangeSet;
+import domain.PricePeriod;
+import domain.PriceTable;
+import domain.ProductCodeDictionary;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.*;
@@ -208,4 +213,474 @@ public class PriceServiceTest {
         assertThat(joinedPrices.size(), is(3));
         assertTrue(joinedPrices.containsAll(Arrays.asList(expectedPrice1, expectedPrice2, expectedPrice3)));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testJoinPricesByKey() throws Exception {
+        Price existedPrice1 = new Price("122856", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("31.01.2013 23:59:59"), 11000);
+        Price existedPrice2 = new Price("122856", 2, 1, simpleDateFormat.parse("10.01.2013 00:00:00"), simpleDateFormat.parse("20.01.2013 23:59:59"), 99000);
+        Price existedPrice3 = new Price("6654", 1, 2, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("31.01.2013 00:00:00"), 5000);
+
+        Price newPrice1 = new Price("122856", 1, 1, simpleDateFormat.parse("20.01.2013 00:00:00"), simpleDateFormat.parse("20.02.2013 23:59:59"), 11000);
+        Price newPrice2 = new Price("122856", 2, 1, simpleDateFormat.parse("15.01.2013 00:00:00"), simpleDateFormat.parse("25.01.2013 23:59:59"), 92000);
+        Price newPrice3 = new Price("6654", 1, 2, simpleDateFormat.parse("12.01.2013 00:00:00"), simpleDateFormat.parse("13.01.2013 00:00:00"), 4000);
+        Price newPrice4 = new Price("777", 1, 1, simpleDateFormat.parse("12.01.2013 00:00:00"), simpleDateFormat.parse("13.01.2013 00:00:00"), 300);
+
+        Price resultPrice1 = new Price("122856", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("20.02.2013 23:59:59"), 11000);
+        Price resultPrice2 = new Price("122856", 2, 1, simpleDateFormat.parse("10.01.2013 00:00:00"), simpleDateFormat.parse("15.01.2013 00:00:00"), 99000);
+        Price resultPrice3 = new Price("122856", 2, 1, simpleDateFormat.parse("15.01.2013 00:00:00"), simpleDateFormat.parse("25.01.2013 23:59:59"), 92000);
+        Price resultPrice4 = new Price("6654", 1, 2, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("12.01.2013 00:00:00"), 5000);
+        Price resultPrice5 = new Price("6654", 1, 2, simpleDateFormat.parse("12.01.2013 00:00:00"), simpleDateFormat.parse("13.01.2013 00:00:00"), 4000);
+        Price resultPrice6 = new Price("6654", 1, 2, simpleDateFormat.parse("13.01.2013 00:00:00"), simpleDateFormat.parse("31.01.2013 00:00:00"), 5000);
+        Price resultPrice7 = new Price("777", 1, 1, simpleDateFormat.parse("12.01.2013 00:00:00"), simpleDateFormat.parse("13.01.2013 00:00:00"), 300);
+
+        List<Price> existedPrices = Arrays.asList(existedPrice1, existedPrice2, existedPrice3);
+        List<Price> newPrices = Arrays.asList(newPrice1, newPrice2, newPrice3, newPrice4);
+
+        List<Price> expectedResultPrices = Arrays.asList(resultPrice1, resultPrice2, resultPrice3, resultPrice4, resultPrice5, resultPrice6, resultPrice7);
+
+        Collection<Price> joinedPrices = priceService.joinPricesByKey(existedPrices, newPrices);
+
+        assertThat(joinedPrices.size(), is(expectedResultPrices.size()));
+        assertTrue(joinedPrices.containsAll(expectedResultPrices));
+    }
+
+    @Test
+    public void testJoinPricesByKeyWithOverlapExistedPrice() throws Exception {
+        Price existedPrice1 = new Price("1", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("10.01.2013 00:00:00"), 80);
+        Price existedPrice2 = new Price("1", 1, 1, simpleDateFormat.parse("10.01.2013 00:00:00"), simpleDateFormat.parse("20.01.2013 00:00:00"), 87);
+        Price existedPrice3 = new Price("1", 1, 1, simpleDateFormat.parse("20.01.2013 00:00:00"), simpleDateFormat.parse("30.01.2013 00:00:00"), 90);
+        Price existedPrice4 = new Price("2", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("30.01.2013 00:00:00"), 90);
+
+        Price newPrice1 = new Price("1", 1, 1, simpleDateFormat.parse("05.01.2013 00:00:00"), simpleDateFormat.parse("15.01.2013 00:00:00"), 80);
+        Price newPrice2 = new Price("1", 1, 1, simpleDateFormat.parse("15.01.2013 00:00:00"), simpleDateFormat.parse("25.01.2013 00:00:00"), 85);
+
+        Price expectedPrice1 = new Price("1", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("15.01.2013 00:00:00"), 80);
+        Price expectedPrice2 = new Price("1", 1, 1, simpleDateFormat.parse("15.01.2013 00:00:00"), simpleDateFormat.parse("25.01.2013 00:00:00"), 85);
+        Price expectedPrice3 = new Price("1", 1, 1, simpleDateFormat.parse("25.01.2013 00:00:00"), simpleDateFormat.parse("30.01.2013 00:00:00"), 90);
+
+        Collection<Price> joinedPrices = priceService.joinPricesByKey(Arrays.asList(existedPrice1, existedPrice2, existedPrice3, existedPrice4), Arrays.asList(newPrice1, newPrice2));
+
+        assertThat(joinedPrices.size(), is(4));
+        assertTrue(joinedPrices.containsAll(Arrays.asList(expectedPrice1, expectedPrice2, expectedPrice3)));
+        assertTrue(joinedPrices.contains(existedPrice4));
+    }
+
+    @Test
+    public void testJoinPricesByKeyKeepsUntouchedKeys() throws Exception {
+        Price existedPrice1 = new Price("2", 1, 1, simpleDateFormat.parse("10.01.2013 00:00:00"), simpleDateFormat.parse("20.01.2013 00:00:00"), 90);
+        Price existedPrice2 = new Price("1", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("10.01.2013 00:00:00"), 80);
+        Price existedPrice3 = new Price("2", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("10.01.2013 00:00:00"), 95);
+
+        Price newPrice = new Price("1", 1, 1, simpleDateFormat.parse("05.01.2013 00:00:00"), simpleDateFormat.parse("15.01.2013 00:00:00"), 85);
+
+        List<Price> joinedPrices = new ArrayList<>(priceService.joinPricesByKey(Arrays.asList(existedPrice1, existedPrice2, existedPrice3), Collections.singletonList(newPrice)));
+
+        assertThat(joinedPrices.size(), is(4));
+        assertSame(existedPrice1, joinedPrices.get(0));
+        assertSame(existedPrice3, joinedPrices.get(1));
+        assertThat(joinedPrices.get(2), is(new Price("1", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("05.01.2013 00:00:00"), 80)));
+        assertThat(joinedPrices.get(3), is(newPrice));
+    }
+
+    @Test
+    public void testJoinPriceWithIndex() throws Exception {
+        Price existedPrice1 = new Price("1", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("10.01.2013 00:00:00"), 80);
+        Price existedPrice2 = new Price("1", 1, 1, simpleDateFormat.parse("10.01.2013 00:00:00"), simpleDateFormat.parse("20.01.2013 00:00:00"), 87);
+        Price existedPrice3 = new Price("1", 1, 1, simpleDateFormat.parse("25.01.2013 00:00:00"), simpleDateFormat.parse("30.01.2013 00:00:00"), 80);
+
+        Price newPrice1 = new Price("1", 1, 1, simpleDateFormat.parse("05.01.2013 00:00:00"), simpleDateFormat.parse("12.01.2013 00:00:00"), 80);
+
+        Price expectedPrice1 = new Price("1", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("12.01.2013 00:00:00"), 80);
+        Price expectedPrice2 = new Price("1", 1, 1, simpleDateFormat.parse("12.01.2013 00:00:00"), simpleDateFormat.parse("20.01.2013 00:00:00"), 87);
+        Price expectedPrice3 = new Price("1", 1, 1, simpleDateFormat.parse("25.01.2013 00:00:00"), simpleDateFormat.parse("30.01.2013 00:00:00"), 80);
+
+        PricePeriodIndex index = new PricePeriodIndex(Arrays.asList(existedPrice1, existedPrice2, existedPrice3));
+        priceService.joinPrice(index, newPrice1);
+
+        assertThat(index.getPrices(), is(Arrays.asList(expectedPrice1, expectedPrice2, expectedPrice3)));
+    }
+
+    @Test
+    public void testMergePrices() throws Exception {
+        Price existedPrice1 = new Price("122856", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("31.01.2013 23:59:59"), 11000);
+        Price existedPrice2 = new Price("122856", 2, 1, simpleDateFormat.parse("10.01.2013 00:00:00"), simpleDateFormat.parse("20.01.2013 23:59:59"), 99000);
+        Price existedPrice3 = new Price("6654", 1, 2, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("31.01.2013 00:00:00"), 5000);
+        Price existedPrice4 = new Price("777", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("31.01.2013 00:00:00"), 300);
+
+        Price newPrice1 = new Price("122856", 1, 1, simpleDateFormat.parse("20.01.2013 00:00:00"), simpleDateFormat.parse("20.02.2013 23:59:59"), 11000);
+        Price newPrice2 = new Price("122856", 2, 1, simpleDateFormat.parse("15.01.2013 00:00:00"), simpleDateFormat.parse("25.01.2013 23:59:59"), 92000);
+        Price newPrice3 = new Price("6654", 1, 2, simpleDateFormat.parse("12.01.2013 00:00:00"), simpleDateFormat.parse("13.01.2013 00:00:00"), 4000);
+
+        Price resultPrice1 = new Price("122856", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("20.02.2013 23:59:59"), 11000);
+        Price resultPrice2 = new Price("122856", 2, 1, simpleDateFormat.parse("10.01.2013 00:00:00"), simpleDateFormat.parse("15.01.2013 00:00:00"), 99000);
+        Price resultPrice3 = new Price("122856", 2, 1, simpleDateFormat.parse("15.01.2013 00:00:00"), simpleDateFormat.parse("25.01.2013 23:59:59"), 92000);
+        Price resultPrice4 = new Price("6654", 1, 2, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("12.01.2013 00:00:00"), 5000);
+        Price resultPrice5 = new Price("6654", 1, 2, simpleDateFormat.parse("12.01.2013 00:00:00"), simpleDateFormat.parse("13.01.2013 00:00:00"), 4000);
+        Price resultPrice6 = new Price("6654", 1, 2, simpleDateFormat.parse("13.01.2013 00:00:00"), simpleDateFormat.parse("31.01.2013 00:00:00"), 5000);
+
+        List<Price> existedPrices = Arrays.asList(existedPrice1, existedPrice2, existedPrice3, existedPrice4);
+        List<Price> newPrices = Arrays.asList(newPrice1, newPrice2, newPrice3);
+
+        List<Price> expectedResultPrices = Arrays.asList(resultPrice1, resultPrice2, resultPrice3, resultPrice4, resultPrice5, resultPrice6, existedPrice4);
+
+        Collection<Price> mergedPrices = priceService.mergePrices(existedPrices, newPrices);
+
+        assertThat(new ArrayList<>(mergedPrices), is(expectedResultPrices));
+        assertSame(existedPrice4, new ArrayList<>(mergedPrices).get(6));
+    }
+
+    @Test
+    public void testMergePricesGivesSameResultAsJoinPricesForOverlappingPrices() throws Exception {
+        Price existedPrice1 = new Price("1", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("10.01.2013 00:00:00"), 80);
+        Price existedPrice2 = new Price("1", 1, 1, simpleDateFormat.parse("10.01.2013 00:00:00"), simpleDateFormat.parse("20.01.2013 00:00:00"), 87);
+        Price existedPrice3 = new Price("1", 1, 1, simpleDateFormat.parse("20.01.2013 00:00:00"), simpleDateFormat.parse("30.01.2013 00:00:00"), 90);
+        Price existedPrice4 = new Price("2", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("15.01.2013 00:00:00"), 100);
+        Price existedPrice5 = new Price("2", 1, 1, simpleDateFormat.parse("15.01.2013 00:00:00"), simpleDateFormat.parse("30.01.2013 00:00:00"), 120);
+
+        Price newPrice1 = new Price("1", 1, 1, simpleDateFormat.parse("05.01.2013 00:00:00"), simpleDateFormat.parse("15.01.2013 00:00:00"), 80);
+        Price newPrice2 = new Price("1", 1, 1, simpleDateFormat.parse("15.01.2013 00:00:00"), simpleDateFormat.parse("25.01.2013 00:00:00"), 85);
+        Price newPrice3 = new Price("2", 1, 1, simpleDateFormat.parse("10.01.2013 00:00:00"), simpleDateFormat.parse("20.01.2013 00:00:00"), 110);
+
+        List<Price> existedPrices = Arrays.asList(existedPrice1, existedPrice2, existedPrice3, existedPrice4, existedPrice5);
+        List<Price> newPrices = Arrays.asList(newPrice1, newPrice2, newPrice3);
+
+        Collection<Price> mergedPrices = priceService.mergePrices(existedPrices, newPrices);
+        Collection<Price> joinedPrices = priceService.joinPrices(copyPrices(existedPrices), newPrices);
+
+        assertThat(mergedPrices.size(), is(joinedPrices.size()));
+        assertTrue(mergedPrices.containsAll(joinedPrices));
+    }
+
+    @Test
+    public void testMergePricesDoesNotMergeNotTouchingPricesUnlikeJoinPrices() throws Exception {
+        Price existedPrice = new Price("1", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("05.01.2013 00:00:00"), 80);
+        Price newPrice = new Price("1", 1, 1, simpleDateFormat.parse("10.01.2013 00:00:00"), simpleDateFormat.parse("15.01.2013 00:00:00"), 80);
+
+        Price joinedPrice = new Price("1", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("15.01.2013 00:00:00"), 80);
+
+        Collection<Price> mergedPrices = priceService.mergePrices(Collections.singletonList(existedPrice), Collections.singletonList(newPrice));
+        Collection<Price> joinedPrices = priceService.joinPrices(copyPrices(Collections.singletonList(existedPrice)), Collections.singletonList(newPrice));
+
+        assertThat(new ArrayList<>(mergedPrices), is(Arrays.asList(existedPrice, newPrice)));
+        assertThat(new ArrayList<>(joinedPrices), is(Collections.singletonList(joinedPrice)));
+    }
+
+    @Test
+    public void testMergePricesKeepsRemainderOfMatchUnlikeJoinPrices() throws Exception {
+        Price existedPrice = new Price("1", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("20.01.2013 00:00:00"), 80);
+        Price newPrice = new Price("1", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("10.01.2013 00:00:00"), 90);
+
+        Price remainderPrice = new Price("1", 1, 1, simpleDateFormat.parse("10.01.2013 00:00:00"), simpleDateFormat.parse("20.01.2013 00:00:00"), 80);
+
+        Collection<Price> mergedPrices = priceService.mergePrices(Collections.singletonList(existedPrice), Collections.singletonList(newPrice));
+        Collection<Price> joinedPrices = priceService.joinPrices(copyPrices(Collections.singletonList(existedPrice)), Collections.singletonList(newPrice));
+
+        assertThat(new ArrayList<>(mergedPrices), is(Arrays.asList(newPrice, remainderPrice)));
+        assertThat(new ArrayList<>(joinedPrices), is(Collections.singletonList(newPrice)));
+    }
+
+    @Test
+    public void testMergePricesDoesNotMergeByCoveredNewPriceUnlikeJoinPrices() throws Exception {
+        Price existedPrice1 = new Price("1", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("03.01.2013 00:00:00"), 2);
+        Price existedPrice2 = new Price("1", 1, 1, simpleDateFormat.parse("03.01.2013 00:00:00"), simpleDateFormat.parse("04.01.2013 00:00:00"), 2);
+        Price existedPrice3 = new Price("1", 1, 1, simpleDateFormat.parse("04.01.2013 00:00:00"), simpleDateFormat.parse("08.01.2013 00:00:00"), 2);
+        List<Price> existedPrices = Arrays.asList(existedPrice1, existedPrice2, existedPrice3);
+
+        Price newPrice1 = new Price("1", 1, 1, simpleDateFormat.parse("08.01.2013 00:00:00"), simpleDateFormat.parse("09.01.2013 00:00:00"), 2);
+        Price newPrice2 = new Price("1", 1, 1, simpleDateFormat.parse("06.01.2013 00:00:00"), simpleDateFormat.parse("13.01.2013 00:00:00"), 0);
+        List<Price> newPrices = Arrays.asList(newPrice1, newPrice2);
+
+        Price remainderPrice = new Price("1", 1, 1, simpleDateFormat.parse("04.01.2013 00:00:00"), simpleDateFormat.parse("06.01.2013 00:00:00"), 2);
+        Price joinedPrice = new Price("1", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("06.01.2013 00:00:00"), 2);
+
+        Collection<Price> mergedPrices = priceService.mergePrices(existedPrices, newPrices);
+        Collection<Price> joinedPrices = priceService.joinPrices(copyPrices(existedPrices), newPrices);
+
+        assertThat(new ArrayList<>(mergedPrices), is(Arrays.asList(existedPrice1, existedPrice2, remainderPrice, newPrice2)));
+        assertThat(new HashSet<>(joinedPrices), is(new HashSet<>(Arrays.asList(joinedPrice, newPrice2))));
+    }
+
+    @Test
+    public void testMergePricesWithLaterNewPricePrecedence() throws Exception {
+        Price existedPrice1 = new Price("1", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("30.01.2013 00:00:00"), 50);
+        existedPrice1.setId(7);
+
+        Price newPrice1 = new Price("1", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("20.01.2013 00:00:00"), 60);
+        Price newPrice2 = new Price("1", 1, 1, simpleDateFormat.parse("10.01.2013 00:00:00"), simpleDateFormat.parse("15.01.2013 00:00:00"), 70);
+
+        Price expectedPrice1 = new Price("1", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("10.01.2013 00:00:00"), 60);
+        Price expectedPrice2 = new Price("1", 1, 1, simpleDateFormat.parse("10.01.2013 00:00:00"), simpleDateFormat.parse("15.01.2013 00:00:00"), 70);
+        Price expectedPrice3 = new Price("1", 1, 1, simpleDateFormat.parse("15.01.2013 00:00:00"), simpleDateFormat.parse("20.01.2013 00:00:00"), 60);
+        Price expectedPrice4 = new Price("1", 1, 1, simpleDateFormat.parse("20.01.2013 00:00:00"), simpleDateFormat.parse("30.01.2013 00:00:00"), 50);
+
+        List<Price> mergedPrices = new ArrayList<>(priceService.mergePrices(Arrays.asList(existedPrice1), Arrays.asList(newPrice1, newPrice2)));
+
+        assertThat(mergedPrices, is(Arrays.asList(expectedPrice1, expectedPrice2, expectedPrice3, expectedPrice4)));
+        assertThat(mergedPrices.get(3).getId(), is(7L));
+        assertThat(existedPrice1.getBegin(), is(simpleDateFormat.parse("01.01.2013 00:00:00")));
+    }
+
+    @Test
+    public void testMergePricesParallel() throws Exception {
+        PriceGenerator generator = new PriceGenerator(42);
+        List<Price> existedPrices = generator.generatePrices(1500, 300, 3);
+        List<Price> newPrices = generator.generatePrices(500, 300, 3);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Collection<Price> mergedPrices = priceService.mergePrices(existedPrices, newPrices);
+            Collection<Price> parallelMergedPrices = priceService.mergePricesParallel(existedPrices, newPrices, pool);
+
+            assertThat(new ArrayList<>(parallelMergedPrices), is(new ArrayList<>(mergedPrices)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testMergePriceTables() throws Exception {
+        PriceGenerator generator = new PriceGenerator(42);
+        List<Price> existedPrices = generator.generatePrices(1500, 300, 3);
+        List<Price> newPrices = generator.generatePrices(500, 300, 3);
+
+        ProductCodeDictionary dictionary = priceService.getDictionary();
+        PriceTable existedTable = new PriceTable(dictionary);
+        PriceTable newTable = new PriceTable(dictionary);
+        for (Price price : existedPrices) {
+            existedTable.add(price);
+        }
+        for (Price price : newPrices) {
+            newTable.add(price);
+        }
+
+        PriceTable mergedTable = priceService.mergePrices(existedTable, newTable);
+        Collection<Price> mergedPrices = priceService.mergePrices(existedPrices, newPrices);
+
+        List<Price> tablePrices = new ArrayList<>();
+        for (int row = 0; row < mergedTable.size(); row++) {
+            tablePrices.add(mergedTable.getPrice(row));
+        }
+        assertThat(tablePrices.size(), is(mergedPrices.size()));
+        assertTrue(tablePrices.containsAll(mergedPrices));
+    }
+
+    @Test
+    public void testMergePriceTablesGroupsByKey() throws Exception {
+        ProductCodeDictionary dictionary = priceService.getDictionary();
+        int codeB = dictionary.getId("b");
+        int codeA = dictionary.getId("a");
+        long begin = simpleDateFormat.parse("01.01.2013 00:00:00").getTime();
+        long day = PriceGenerator.DAY;
+
+        PriceTable existedTable = new PriceTable(dictionary);
+        existedTable.add(1, codeA, 1, 1, begin + 10 * day, begin + 20 * day, 80);
+        existedTable.add(2, codeB, 1, 1, begin + 10 * day, begin + 20 * day, 70);
+        existedTable.add(3, codeA, 1, 1, begin, begin + 10 * day, 85);
+        existedTable.add(4, codeB, 1, 1, begin, begin + 10 * day, 75);
+        PriceTable newTable = new PriceTable(dictionary);
+        newTable.add(0, codeB, 1, 1, begin + 20 * day, begin + 30 * day, 60);
+
+        PriceTable mergedTable = priceService.mergePrices(existedTable, newTable);
+
+        List<Long> ids = new ArrayList<>();
+        for (int row = 0; row < mergedTable.size(); row++) {
+            ids.add(mergedTable.getId(row));
+        }
+        assertThat(ids, is(Arrays.asList(4L, 2L, 0L, 1L, 3L)));
+    }
+
+    @Test
+    public void testMergePricePeriods() throws Exception {
+        Price existedPrice1 = new Price("1", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("10.01.2013 00:00:00"), 80);
+        Price existedPrice2 = new Price("1", 1, 1, simpleDateFormat.parse("10.01.2013 00:00:00"), simpleDateFormat.parse("20.01.2013 00:00:00"), 87);
+        Price existedPrice3 = new Price("2", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("20.01.2013 00:00:00"), 90);
+        existedPrice2.setId(2);
+        existedPrice3.setId(3);
+
+        Price newPrice1 = new Price("1", 1, 1, simpleDateFormat.parse("05.01.2013 00:00:00"), simpleDateFormat.parse("15.01.2013 00:00:00"), 80);
+
+        List<Price> existedPrices = Arrays.asList(existedPrice1, existedPrice2, existedPrice3);
+        List<Price> newPrices = Arrays.asList(newPrice1);
+
+        List<PricePeriod> mergedPrices = new ArrayList<>(priceService.mergePricePeriods(toPricePeriods(existedPrices), toPricePeriods(newPrices)));
+
+        assertThat(mergedPrices, is(toPricePeriods(new ArrayList<>(priceService.mergePrices(existedPrices, newPrices)))));
+        assertThat(mergedPrices.get(1).getId(), is(2L));
+        assertThat(mergedPrices.get(2).getId(), is(3L));
+    }
+
+    @Test
+    public void testGetPricesChanges() throws Exception {
+        Price existedPrice1 = new Price("1", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("10.01.2013 00:00:00"), 80);
+        Price existedPrice2 = new Price("1", 1, 1, simpleDateFormat.parse("10.01.2013 00:00:00"), simpleDateFormat.parse("20.01.2013 00:00:00"), 87);
+        Price existedPrice3 = new Price("1", 1, 1, simpleDateFormat.parse("20.01.2013 00:00:00"), simpleDateFormat.parse("22.01.2013 00:00:00"), 90);
+        Price existedPrice4 = new Price("2", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("30.01.2013 00:00:00"), 50);
+        Price existedPrice5 = new Price("3", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("30.01.2013 00:00:00"), 50);
+        existedPrice1.setId(1);
+        existedPrice2.setId(2);
+        existedPrice3.setId(3);
+        existedPrice4.setId(4);
+        existedPrice5.setId(5);
+
+        Price newPrice1 = new Price("1", 1, 1, simpleDateFormat.parse("05.01.2013 00:00:00"), simpleDateFormat.parse("15.01.2013 00:00:00"), 80);
+        Price newPrice2 = new Price("1", 1, 1, simpleDateFormat.parse("18.01.2013 00:00:00"), simpleDateFormat.parse("25.01.2013 00:00:00"), 85);
+        Price newPrice3 = new Price("2", 1, 1, simpleDateFormat.parse("05.01.2013 00:00:00"), simpleDateFormat.parse("15.01.2013 00:00:00"), 60);
+
+        Price expectedUpdatedPrice1 = new Price("1", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("15.01.2013 00:00:00"), 80);
+        Price expectedUpdatedPrice2 = new Price("1", 1, 1, simpleDateFormat.parse("15.01.2013 00:00:00"), simpleDateFormat.parse("18.01.2013 00:00:00"), 87);
+        Price expectedSplitPrice = new Price("2", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("05.01.2013 00:00:00"), 50);
+        Price expectedInsertedPrice1 = new Price("1", 1, 1, simpleDateFormat.parse("18.01.2013 00:00:00"), simpleDateFormat.parse("25.01.2013 00:00:00"), 85);
+        Price expectedInsertedPrice2 = new Price("2", 1, 1, simpleDateFormat.parse("05.01.2013 00:00:00"), simpleDateFormat.parse("15.01.2013 00:00:00"), 60);
+        Price expectedInsertedPrice3 = new Price("2", 1, 1, simpleDateFormat.parse("15.01.2013 00:00:00"), simpleDateFormat.parse("30.01.2013 00:00:00"), 50);
+
+        PriceChangeSet changes = priceService.getPricesChanges(
+                Arrays.asList(existedPrice1, existedPrice2, existedPrice3, existedPrice4, existedPrice5),
+                Arrays.asList(newPrice1, newPrice2, newPrice3));
+
+        assertThat(changes.getUpdated(), is(Arrays.asList(expectedUpdatedPrice1, expectedUpdatedPrice2)));
+        assertThat(changes.getUpdated().get(0).getId(), is(1L));
+        assertThat(changes.getUpdated().get(1).getId(), is(2L));
+        assertThat(changes.getSplit(), is(Arrays.asList(expectedSplitPrice)));
+        assertThat(changes.getSplit().get(0).getId(), is(4L));
+        assertThat(changes.getDeleted(), is(Arrays.asList(existedPrice3)));
+        assertThat(changes.getInserted().size(), is(3));
+        assertTrue(changes.getInserted().containsAll(Arrays.asList(expectedInsertedPrice1, expectedInsertedPrice2, expectedInsertedPrice3)));
+    }
+
+    @Test
+    public void testMergePricesFromIterators() throws Exception {
+        PriceGenerator generator = new PriceGenerator(42);
+        List<Price> existedPrices = generator.generatePrices(1500, 300, 3);
+        List<Price> newPrices = generator.generatePrices(500, 300, 3);
+
+        List<Price> sortedExistedPrices = new ArrayList<>(existedPrices);
+        sortedExistedPrices.sort(PriceService.KEY_ORDER.thenComparing(Price::getBegin));
+        List<Price> sortedNewPrices = new ArrayList<>(newPrices);
+        sortedNewPrices.sort(PriceService.KEY_ORDER);
+
+        List<Price> mergedPrices = new ArrayList<>();
+        priceService.mergePrices(sortedExistedPrices.iterator(), sortedNewPrices.iterator()).forEachRemaining(mergedPrices::add);
+
+        Collection<Price> expectedPrices = priceService.mergePrices(sortedExistedPrices, sortedNewPrices);
+
+        assertThat(mergedPrices.size(), is(expectedPrices.size()));
+        assertTrue(mergedPrices.containsAll(expectedPrices));
+        for (int i = 1; i < mergedPrices.size(); i++) {
+            assertTrue(PriceService.KEY_ORDER.compare(mergedPrices.get(i - 1), mergedPrices.get(i)) <= 0);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMergePricesFromNotOrderedIterators() throws Exception {
+        Price existedPrice1 = new Price("2", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("10.01.2013 00:00:00"), 80);
+        Price existedPrice2 = new Price("1", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("10.01.2013 00:00:00"), 80);
+
+        Iterator<Price> mergedPrices = priceService.mergePrices(Arrays.asList(existedPrice1, existedPrice2).iterator(), Collections.<Price>emptyIterator());
+        while (mergedPrices.hasNext()) {
+            mergedPrices.next();
+        }
+    }
+
+    @Test
+    public void testMergeStatistics() throws Exception {
+        PriceMergeStatistics statistics = new PriceMergeStatistics();
+        priceService.setMergeListener(statistics);
+
+        for (boolean sweep : new boolean[]{false, true}) {
+            statistics.reset();
+
+            Price existedPrice1 = new Price("122856", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("31.01.2013 23:59:59"), 11000);
+            Price existedPrice2 = new Price("122856", 2, 1, simpleDateFormat.parse("10.01.2013 00:00:00"), simpleDateFormat.parse("20.01.2013 23:59:59"), 99000);
+            Price existedPrice3 = new Price("6654", 1, 2, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("31.01.2013 00:00:00"), 5000);
+            Price existedPrice4 = new Price("6654", 1, 2, simpleDateFormat.parse("01.02.2013 00:00:00"), simpleDateFormat.parse("10.02.2013 00:00:00"), 5500);
+
+            Price newPrice1 = new Price("122856", 1, 1, simpleDateFormat.parse("20.01.2013 00:00:00"), simpleDateFormat.parse("20.02.2013 23:59:59"), 11000);
+            Price newPrice2 = new Price("122856", 2, 1, simpleDateFormat.parse("15.01.2013 00:00:00"), simpleDateFormat.parse("25.01.2013 23:59:59"), 92000);
+            Price newPrice3 = new Price("6654", 1, 2, simpleDateFormat.parse("12.01.2013 00:00:00"), simpleDateFormat.parse("13.01.2013 00:00:00"), 4000);
+            Price newPrice4 = new Price("6654", 1, 2, simpleDateFormat.parse("31.01.2013 00:00:00"), simpleDateFormat.parse("15.02.2013 00:00:00"), 4500);
+
+            List<Price> existedPrices = Arrays.asList(existedPrice1, existedPrice2, existedPrice3, existedPrice4);
+            List<Price> newPrices = Arrays.asList(newPrice1, newPrice2, newPrice3, newPrice4);
+
+            if (sweep) {
+                priceService.mergePrices(existedPrices, newPrices);
+            } else {
+                priceService.joinPrices(existedPrices, newPrices);
+            }
+
+            assertThat(statistics.getForwardOffsetCount(), is(1L));
+            assertThat(statistics.getOccurrenceCount(), is(1L));
+            assertThat(statistics.getAbsorptionCount(), is(1L));
+            assertThat(statistics.getBackwardOffsetCount(), is(0L));
+            assertThat(statistics.getMergedPricesCount(), is(1L));
+            assertThat(statistics.getBatchCount(), is(1L));
+            assertThat(statistics.getInputPricesCount(), is(8L));
+            assertThat(statistics.getOutputPricesCount(), is(7L));
+            assertThat(statistics.getLargestKeyGroup(), is(sweep ? 4L : 0L));
+        }
+
+        priceService.setMergeListener(null);
+        priceService.mergePrices(Collections.<Price>emptyList(), Collections.<Price>emptyList());
+        assertThat(statistics.getBatchCount(), is(1L));
+    }
+
+    private List<PricePeriod> toPricePeriods(List<Price> prices) {
+        List<PricePeriod> result = new ArrayList<>();
+        for (Price price : prices) {
+            result.add(priceService.toPricePeriod(price));
+        }
+        return result;
+    }
+
+    @Test
+    public void testCompactPrices() throws Exception {
+        Price price1 = new Price("1", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("10.01.2013 00:00:00"), 80);
+        price1.setId(3);
+        Price price2 = new Price("1", 1, 1, simpleDateFormat.parse("10.01.2013 00:00:00"), simpleDateFormat.parse("20.01.2013 00:00:00"), 80);
+        price2.setId(4);
+        Price price3 = new Price("1", 1, 1, simpleDateFormat.parse("20.01.2013 00:00:00"), simpleDateFormat.parse("25.01.2013 00:00:00"), 90);
+        Price price4 = new Price("1", 1, 1, simpleDateFormat.parse("25.01.2013 00:00:00"), simpleDateFormat.parse("30.01.2013 00:00:00"), 80);
+        Price price5 = new Price("2", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("15.01.2013 00:00:00"), 100);
+
+        Price resultPrice1 = new Price("1", 1, 1, simpleDateFormat.parse("01.01.2013 00:00:00"), simpleDateFormat.parse("20.01.2013 00:00:00"), 80);
+
+        List<Price> compactedPrices = new ArrayList<>(priceService.compactPrices(Arrays.asList(price2, price5, price4, price1, price3)));
+
+        assertThat(compactedPrices, is(Arrays.asList(resultPrice1, price3, price4, price5)));
+        assertThat(compactedPrices.get(0).getId(), is(3L));
+        assertSame(price3, compactedPrices.get(1));
+        assertSame(price5, compactedPrices.get(3));
+
+        List<Price> recompactedPrices = new ArrayList<>(priceService.compactPrices(compactedPrices));
+        for (int i = 0; i < compactedPrices.size(); i++) {
+            assertSame(compactedPrices.get(i), recompactedPrices.get(i));
+        }
+        assertThat(price2.getBegin(), is(simpleDateFormat.parse("10.01.2013 00:00:00")));
+    }
+
+    @Test
+    public void testCompactPricesKeepsJoinedValues() throws Exception {
+        PriceGenerator generator = new PriceGenerator(17);
+        List<Price> joinedPrices = new ArrayList<>(priceService.mergePrices(Collections.<Price>emptyList(), generator.generatePrices(500, 300, 3)));
+        Collections.shuffle(joinedPrices, generator.getRandom());
+        List<Price> fragmentedPrices = new ArrayList<>();
+        for (Price price : joinedPrices) {
+            long middle = (price.getBegin().getTime() + price.getEnd().getTime()) / 2;
+            fragmentedPrices.add(new Price(price.getProductCode(), price.getNumber(), price.getDepart(), price.getBegin(), new Date(middle), price.getValue()));
+            fragmentedPrices.add(new Price(price.getProductCode(), price.getNumber(), price.getDepart(), new Date(middle), price.getEnd(), price.getValue()));
+        }
+
+        Collection<Price> compactedPrices = priceService.compactPrices(fragmentedPrices);
+
+        assertThat(compactedPrices.size(), is(joinedPrices.size()));
+        assertTrue(compactedPrices.containsAll(joinedPrices));
+    }
+
+    private List<Price> copyPrices(List<Price> prices) {
+        List<Price> result = new ArrayList<>();
+        for (Price price : prices) {
+            result.add(priceService.copyPrice(price));
+        }
+        return result;
+    }
+}
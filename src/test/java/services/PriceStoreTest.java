@@ -0,0 +1,198 @@
+package services;
+
+import domain.PriceKey;
+import domain.PricePeriod;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class PriceStoreTest {
+
+    private Path directory;
+    private SimpleDateFormat simpleDateFormat;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("prices");
+        simpleDateFormat = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        List<Path> files = new ArrayList<>();
+        Files.walk(directory).forEach(files::add);
+        Collections.reverse(files);
+        for (Path file : files) {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testWriteAndReadAfterReopen() throws Exception {
+        PricePeriod price1;
+        PricePeriod price2;
+        PriceKey key;
+        try (PriceStore store = PriceStore.open(directory)) {
+            int productCodeId = store.getDictionary().getId("122856");
+            price1 = new PricePeriod(1, productCodeId, 1, 1, time("01.01.2013 00:00:00"), time("10.01.2013 00:00:00"), 11000);
+            price2 = new PricePeriod(2, productCodeId, 1, 1, time("10.01.2013 00:00:00"), time("20.01.2013 00:00:00"), 12000);
+            key = PriceKey.of(price1);
+
+            store.write(key, Arrays.asList(price1, price2));
+            assertThat(store.read(key), is(Arrays.asList(price1, price2)));
+        }
+
+        try (PriceStore store = PriceStore.open(directory)) {
+            assertThat(store.getDictionary().getCode(key.getProductCodeId()), is("122856"));
+            assertThat(store.getKeys(), is(Collections.singleton(key)));
+
+            List<PricePeriod> prices = store.read(key);
+            assertThat(prices, is(Arrays.asList(price1, price2)));
+            assertThat(prices.get(1).getId(), is(2L));
+        }
+    }
+
+    @Test
+    public void testCompact() throws Exception {
+        try (PriceStore store = PriceStore.open(directory)) {
+            PricePeriod price1 = new PricePeriod(1, store.getDictionary().getId("1"), 1, 1, time("01.01.2013 00:00:00"), time("10.01.2013 00:00:00"), 80);
+            PricePeriod price2 = new PricePeriod(2, store.getDictionary().getId("2"), 1, 1, time("01.01.2013 00:00:00"), time("10.01.2013 00:00:00"), 90);
+            PricePeriod price3 = price1.withPeriod(1, time("01.01.2013 00:00:00"), time("05.01.2013 00:00:00"));
+
+            store.write(PriceKey.of(price1), Collections.singletonList(price1));
+            store.write(PriceKey.of(price2), Collections.singletonList(price2));
+            store.write(PriceKey.of(price3), Collections.singletonList(price3));
+            assertThat(store.getGarbageSize(), is((long) PriceStore.RECORD_SIZE));
+
+            store.compact();
+
+            assertThat(store.getGarbageSize(), is(0L));
+            assertThat(Files.size(directory.resolve("prices.1.dat")), is(2L * PriceStore.RECORD_SIZE));
+            assertFalse(Files.exists(directory.resolve("prices.0.dat")));
+            assertThat(store.read(PriceKey.of(price1)), is(Collections.singletonList(price3)));
+            assertThat(store.read(PriceKey.of(price2)), is(Collections.singletonList(price2)));
+        }
+
+        try (PriceStore store = PriceStore.open(directory)) {
+            assertThat(store.getKeys().size(), is(2));
+            assertThat(store.getGarbageSize(), is(0L));
+        }
+    }
+
+    @Test
+    public void testOpenAfterInterruptedCompact() throws Exception {
+        PricePeriod price;
+        try (PriceStore store = PriceStore.open(directory)) {
+            price = new PricePeriod(1, store.getDictionary().getId("1"), 1, 1, time("01.01.2013 00:00:00"), time("10.01.2013 00:00:00"), 80);
+            store.write(PriceKey.of(price), Collections.singletonList(price));
+        }
+        Files.write(directory.resolve("prices.1.dat"), new byte[PriceStore.RECORD_SIZE]);
+
+        try (PriceStore store = PriceStore.open(directory)) {
+            assertThat(store.read(PriceKey.of(price)), is(Collections.singletonList(price)));
+            assertFalse(Files.exists(directory.resolve("prices.1.dat")));
+        }
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        try (PriceStore store = PriceStore.open(directory)) {
+            PricePeriod price1 = new PricePeriod(1, store.getDictionary().getId("1"), 1, 1, time("01.01.2013 00:00:00"), time("10.01.2013 00:00:00"), 80);
+            PricePeriod price2 = price1.withPeriod(2, time("10.01.2013 00:00:00"), time("20.01.2013 00:00:00"));
+            PriceKey key = PriceKey.of(price1);
+            List<PriceKey> writtenKeys = new ArrayList<>();
+            store.addWriteListener(writtenKeys::add);
+
+            assertTrue(store.update(key, prices -> Collections.singletonList(price1)));
+            assertFalse(store.update(key, prices -> new ArrayList<>(prices)));
+            assertTrue(store.update(key, prices -> {
+                List<PricePeriod> result = new ArrayList<>(prices);
+                result.add(price2);
+                return result;
+            }));
+
+            assertThat(store.read(key), is(Arrays.asList(price1, price2)));
+            assertThat(writtenKeys, is(Arrays.asList(key, key)));
+        }
+    }
+
+    @Test
+    public void testMergePricesInStore() throws Exception {
+        try (PriceStore store = PriceStore.open(directory)) {
+            PriceService priceService = new PriceService(store.getDictionary());
+            int productCodeId1 = store.getDictionary().getId("1");
+            int productCodeId2 = store.getDictionary().getId("2");
+
+            PricePeriod existedPrice1 = new PricePeriod(1, productCodeId1, 1, 1, time("01.01.2013 00:00:00"), time("30.01.2013 00:00:00"), 50);
+            PricePeriod existedPrice2 = new PricePeriod(2, productCodeId2, 1, 1, time("01.01.2013 00:00:00"), time("30.01.2013 00:00:00"), 50);
+            store.write(PriceKey.of(existedPrice1), Collections.singletonList(existedPrice1));
+            store.write(PriceKey.of(existedPrice2), Collections.singletonList(existedPrice2));
+
+            PricePeriod newPrice1 = new PricePeriod(0, productCodeId1, 1, 1, time("05.01.2013 00:00:00"), time("15.01.2013 00:00:00"), 60);
+            PricePeriod newPrice2 = new PricePeriod(0, productCodeId2, 1, 1, time("05.01.2013 00:00:00"), time("15.01.2013 00:00:00"), 50);
+
+            Set<PriceKey> changedKeys = priceService.mergePrices(store, Arrays.asList(newPrice1, newPrice2));
+
+            assertThat(changedKeys, is(Collections.singleton(PriceKey.of(existedPrice1))));
+            assertThat(store.read(PriceKey.of(existedPrice1)), is(Arrays.asList(
+                    existedPrice1.withPeriod(1, time("01.01.2013 00:00:00"), time("05.01.2013 00:00:00")),
+                    newPrice1,
+                    existedPrice1.withPeriod(0, time("15.01.2013 00:00:00"), time("30.01.2013 00:00:00")))));
+            assertThat(store.read(PriceKey.of(existedPrice2)), is(Collections.singletonList(existedPrice2)));
+        }
+    }
+
+    @Test
+    public void testConcurrentMergePricesInStore() throws Exception {
+        try (PriceStore store = PriceStore.open(directory)) {
+            PriceService priceService = new PriceService(store.getDictionary());
+            int productCodeId = store.getDictionary().getId("1");
+            long begin = time("01.01.2013 00:00:00");
+            int mergesCount = 200;
+
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            try {
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<?>> futures = new ArrayList<>();
+                for (int worker = 0; worker < 2; worker++) {
+                    int value = worker + 1;
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        for (int i = 0; i < mergesCount; i++) {
+                            long day = begin + (i * 2 + value - 1) * PriceGenerator.DAY;
+                            priceService.mergePrices(store, Collections.singletonList(
+                                    new PricePeriod(0, productCodeId, 1, 1, day, day + PriceGenerator.DAY, value)));
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+
+            List<PricePeriod> prices = store.read(new PriceKey(productCodeId, 1, 1));
+            assertThat(prices.size(), is(mergesCount * 2));
+            for (int i = 0; i < prices.size(); i++) {
+                assertThat(prices.get(i).getBegin(), is(begin + i * PriceGenerator.DAY));
+                assertThat(prices.get(i).getValue(), is((long) (i % 2 + 1)));
+            }
+        }
+    }
+
+    private long time(String date) throws Exception {
+        return simpleDateFormat.parse(date).getTime();
+    }
+}
@@ -0,0 +1,75 @@
+package services;
+
+import domain.PriceKey;
+import domain.PricePeriod;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class PriceTimelineCompactorTest {
+
+    private Path directory;
+    private SimpleDateFormat simpleDateFormat;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("prices");
+        simpleDateFormat = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        List<Path> files = new ArrayList<>();
+        Files.walk(directory).forEach(files::add);
+        Collections.reverse(files);
+        for (Path file : files) {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testCompactChangedKeys() throws Exception {
+        try (PriceStore store = PriceStore.open(directory)) {
+            PriceService priceService = new PriceService(store.getDictionary());
+            int productCodeId1 = store.getDictionary().getId("1");
+            int productCodeId2 = store.getDictionary().getId("2");
+            PricePeriod price1 = new PricePeriod(1, productCodeId1, 1, 1, time("01.01.2013 00:00:00"), time("10.01.2013 00:00:00"), 80);
+            PricePeriod price2 = new PricePeriod(2, productCodeId1, 1, 1, time("10.01.2013 00:00:00"), time("20.01.2013 00:00:00"), 80);
+            PricePeriod price3 = new PricePeriod(3, productCodeId2, 1, 1, time("01.01.2013 00:00:00"), time("10.01.2013 00:00:00"), 90);
+            PricePeriod price4 = new PricePeriod(4, productCodeId2, 1, 1, time("10.01.2013 00:00:00"), time("20.01.2013 00:00:00"), 90);
+            PriceKey key1 = PriceKey.of(price1);
+            PriceKey key2 = PriceKey.of(price3);
+            store.write(key1, Arrays.asList(price1, price2));
+
+            PriceTimelineCompactor compactor = new PriceTimelineCompactor(priceService, store);
+            store.write(key2, Arrays.asList(price3, price4));
+            assertThat(compactor.getChangedKeysCount(), is(2));
+
+            assertThat(compactor.compact(), is(new HashSet<>(Arrays.asList(key1, key2))));
+            assertThat(compactor.getChangedKeysCount(), is(0));
+            assertThat(store.read(key1), is(Collections.singletonList(price1.withPeriod(1, time("01.01.2013 00:00:00"), time("20.01.2013 00:00:00")))));
+            assertThat(store.read(key1).get(0).getId(), is(1L));
+            assertThat(store.read(key2).size(), is(1));
+
+            store.write(key2, Arrays.asList(price3, price4));
+            assertThat(compactor.compact(), is(Collections.singleton(key2)));
+            assertThat(compactor.compact(), is(Collections.<PriceKey>emptySet()));
+
+            compactor.close();
+            store.write(key2, Arrays.asList(price3, price4));
+            assertThat(compactor.getChangedKeysCount(), is(0));
+        }
+    }
+
+    private long time(String date) throws Exception {
+        return simpleDateFormat.parse(date).getTime();
+    }
+}
@@ -0,0 +1,107 @@
+package services;
+
+import domain.PriceKey;
+import domain.PricePeriod;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class VersionedPriceBookTest {
+
+    private PriceService priceService;
+    private SimpleDateFormat simpleDateFormat;
+
+    @Before
+    public void setUp() {
+        priceService = new PriceService();
+        simpleDateFormat = new SimpleDateFormat("dd.MM.yyyy HH:mm:ss");
+    }
+
+    @Test
+    public void testApplyKeepsVersions() throws Exception {
+        VersionedPriceBook priceBook = new VersionedPriceBook(priceService, 10);
+        PricePeriod existedPrice = new PricePeriod(1, 0, 1, 1, time("01.01.2013 00:00:00"), time("30.01.2013 00:00:00"), 50);
+        PricePeriod otherPrice = new PricePeriod(2, 1, 1, 1, time("01.01.2013 00:00:00"), time("30.01.2013 00:00:00"), 70);
+        PricePeriod newPrice = new PricePeriod(0, 0, 1, 1, time("05.01.2013 00:00:00"), time("15.01.2013 00:00:00"), 60);
+        PriceKey key = PriceKey.of(existedPrice);
+        PriceKey otherKey = PriceKey.of(otherPrice);
+
+        PriceBookSnapshot snapshot1 = priceBook.apply(Arrays.asList(existedPrice, otherPrice));
+        PriceBookSnapshot snapshot2 = priceBook.apply(Collections.singletonList(newPrice));
+
+        assertThat(snapshot1.getVersion(), is(1L));
+        assertThat(snapshot2.getVersion(), is(2L));
+        assertThat(priceBook.getSnapshot(), is(snapshot2));
+        assertThat(priceBook.getSnapshot(1), is(snapshot1));
+        assertThat(priceBook.getSnapshot(0).size(), is(0));
+
+        assertThat(snapshot1.findPrice(key, time("10.01.2013 00:00:00")), is(existedPrice));
+        assertThat(snapshot2.findPrice(key, time("10.01.2013 00:00:00")), is(newPrice));
+        assertThat(snapshot2.getTimeline(key).size(), is(3));
+        assertSame(snapshot1.getTimeline(otherKey), snapshot2.getTimeline(otherKey));
+        assertThat(snapshot2.getKeys(), is(new HashSet<>(Arrays.asList(key, otherKey))));
+    }
+
+    @Test
+    public void testRetention() throws Exception {
+        VersionedPriceBook priceBook = new VersionedPriceBook(priceService, 3);
+        PricePeriod price = new PricePeriod(0, 0, 1, 1, time("01.01.2013 00:00:00"), time("30.01.2013 00:00:00"), 50);
+
+        PriceBookSnapshot snapshot1 = priceBook.apply(Collections.singletonList(price));
+        for (int i = 0; i < 4; i++) {
+            priceBook.apply(Collections.singletonList(price));
+        }
+
+        assertThat(priceBook.getVersion(), is(5L));
+        assertThat(new ArrayList<>(priceBook.getVersions()), is(Arrays.asList(3L, 4L, 5L)));
+        assertThat(snapshot1.findPrice(PriceKey.of(price), time("10.01.2013 00:00:00")), is(price));
+        try {
+            priceBook.getSnapshot(1);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testVersionsMatchPriceBook() throws Exception {
+        PriceGenerator generator = new PriceGenerator(16);
+
+        VersionedPriceBook versionedPriceBook = new VersionedPriceBook(priceService, 100);
+        PriceBook priceBook = new PriceBook(priceService);
+        List<Map<PriceKey, List<PricePeriod>>> expectedVersions = new ArrayList<>();
+
+        for (int i = 0; i < 20; i++) {
+            List<PricePeriod> batch = generator.generatePricePeriods(300, 10, 40, 40);
+
+            versionedPriceBook.apply(batch);
+            priceBook.apply(batch);
+
+            Map<PriceKey, List<PricePeriod>> expected = new HashMap<>();
+            for (PriceKey key : priceBook.getKeys()) {
+                expected.put(key, priceBook.getTimeline(key).getPrices());
+            }
+            expectedVersions.add(expected);
+        }
+
+        for (int i = 0; i < expectedVersions.size(); i++) {
+            PriceBookSnapshot snapshot = versionedPriceBook.getSnapshot(i + 1);
+            Map<PriceKey, List<PricePeriod>> expected = expectedVersions.get(i);
+
+            assertThat(snapshot.size(), is(expected.size()));
+            assertThat(snapshot.getKeys(), is(expected.keySet()));
+            for (Map.Entry<PriceKey, List<PricePeriod>> entry : expected.entrySet()) {
+                assertThat(snapshot.getTimeline(entry.getKey()).getPrices(), is(entry.getValue()));
+            }
+        }
+    }
+
+    private long time(String date) throws Exception {
+        return simpleDateFormat.parse(date).getTime();
+    }
+}